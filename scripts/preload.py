@@ -22,27 +22,53 @@ from java.util.logging import Level
 
 import org.cyberlis.pyloader.PythonPlugin as PythonPlugin
 import org.cyberlis.pyloader.PythonListener as _PythonListener
+import org.cyberlis.pyloader.PythonCustomEvent as PythonCustomEvent
+import org.cyberlis.pyloader.DynamicPythonEvent as DynamicPythonEvent
 
-def PythonEventHandler(event, priority=EventPriority.NORMAL):
-    """Adds to PythonListener class methods fields _handlerType and 
-        _handlePriority    
+def PythonEventHandler(event, priority=EventPriority.NORMAL, async=False, ignoreCancelled=False, batch=False, coalesce=False, **filters):
+    """Adds to PythonListener class methods fields _handlerType, 
+        _handlePriority and _handlerOptions
+        async=True calls the handler with a read only snapshot of the
+        event on a virtual thread instead of the server thread
+        ignoreCancelled=True skips the handler for cancelled events
+        batch=True collects the events and calls the handler once per tick
+        with a list of them, coalesce=True keeps only the latest event of
+        every player, entity or block in that list
+        filters (world, entity_type, material, permission, block_changed)
+        are checked in java, events which do not match are not passed
     """
-    def first_wrapper(method):
-        def second_wrapper(*args, **kwargs):
-            method(*args, **kwargs)
-        second_wrapper._handlerType = event
-        second_wrapper._handlePriority = priority
-        return second_wrapper
-    return first_wrapper
+    def decorator(method):
+        method._handlerType = event
+        method._handlePriority = priority
+        method._handlerOptions = dict(filters, async=async, ignoreCancelled=ignoreCancelled, batch=batch, coalesce=coalesce)
+        return method
+    return decorator
+
+def _handlers(cls):
+    """(name, event, priority, options) of the decorated methods of a
+        listener class, searched once per class and kept in the class
+    """
+    handlers = cls.__dict__.get('_pythonHandlers')
+    if handlers is None:
+        handlers = []
+        seen = set()
+        for klass in cls.__mro__:
+            for name, value in klass.__dict__.items():
+                if name in seen:
+                    continue
+                seen.add(name)
+                if hasattr(value, '_handlerType') and hasattr(value, '_handlePriority'):
+                    handlers.append((name, value._handlerType, value._handlePriority, getattr(value, '_handlerOptions', {})))
+        cls._pythonHandlers = handlers
+    return handlers
 
 class PythonListener(_PythonListener):
     """ Event listener class. Modified __init__ for auto adding handlers
         from local methods which was decorated by EventHandler
     """
     def __init__(self, *args, **kwargs):
-        for m in dir(self):
-            if hasattr(getattr(self, m), '_handlerType') and hasattr(getattr(self, m), '_handlePriority'):
-                self.addHandler(getattr(self, m), getattr(self, m)._handlerType, getattr(self, m)._handlePriority)
+        for name, event, priority, options in _handlers(type(self)):
+            self.addHandler(getattr(self, name), event, priority, options)
 
 class PyStdoutRedirect(object):
     def write(self, txt):
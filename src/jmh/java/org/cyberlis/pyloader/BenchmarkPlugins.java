@@ -0,0 +1,91 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.pyloader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes small python plugins to a temporary directory for the benchmarks.
+ */
+final class BenchmarkPlugins {
+
+    private BenchmarkPlugins() {
+    }
+
+    /**
+     * @param dir directory to create the plugin in
+     * @param name plugin name
+     * @param format "pyp" for a zipped plugin, "dir" for a plugin directory
+     * @return the plugin file
+     */
+    static File write(File dir, String name, String format) throws IOException {
+        Map<String, String> files = new LinkedHashMap<String, String>();
+        files.put("plugin.yml", "name: " + name + "\n"
+                + "main: BenchPlugin\n"
+                + "version: 1.0\n");
+        files.put("plugin.py", "from helpers import greet\n"
+                + "\n"
+                + "class BenchPlugin(PythonPlugin):\n"
+                + "    def onEnable(self):\n"
+                + "        greet(self)\n");
+        files.put("helpers.py", "def greet(plugin):\n"
+                + "    return 'hello ' + plugin.getName()\n");
+        StringBuilder config = new StringBuilder();
+        for (int i = 0; i < 64; i++) {
+            config.append("key").append(i).append(": value").append(i).append('\n');
+        }
+        files.put("config.yml", config.toString());
+
+        if (format.equals("pyp")) {
+            File file = new File(dir, name + ".pyp");
+            try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file))) {
+                for (Map.Entry<String, String> entry : files.entrySet()) {
+                    zip.putNextEntry(new ZipEntry(entry.getKey()));
+                    zip.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                    zip.closeEntry();
+                }
+            }
+            return file;
+        }
+        File file = new File(dir, name + ".py.dir");
+        file.mkdirs();
+        for (Map.Entry<String, String> entry : files.entrySet()) {
+            Files.write(new File(file, entry.getKey()).toPath(), entry.getValue().getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+
+    /**
+     * @param dir directory to delete with everything in it
+     */
+    static void delete(File dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir.toPath())) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
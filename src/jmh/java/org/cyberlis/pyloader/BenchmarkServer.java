@@ -0,0 +1,151 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.pyloader;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginManager;
+
+/**
+ * Headless stand-ins for the bukkit server objects the benchmarks need. Every
+ * interface method not handled here returns null, false or 0.
+ */
+final class BenchmarkServer {
+
+    static final Logger LOGGER = Logger.getLogger("PPLoader-benchmark");
+
+    private static Server server;
+
+    private BenchmarkServer() {
+    }
+
+    /**
+     * @return stub server, installed as Bukkit.getServer()
+     */
+    static synchronized Server install() {
+        if (server == null) {
+            LOGGER.setLevel(Level.WARNING);
+            PluginManager pluginManager = stub(PluginManager.class, (proxy, method, args) -> {
+                if (method.getName().equals("getPlugins")) {
+                    return new Plugin[0];
+                }
+                return defaultValue(method.getReturnType());
+            });
+            server = stub(Server.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "getLogger":
+                    return LOGGER;
+                case "getPluginManager":
+                    return pluginManager;
+                default:
+                    return defaultValue(method.getReturnType());
+                }
+            });
+            if (Bukkit.getServer() == null) {
+                Bukkit.setServer(server);
+            }
+        }
+        return server;
+    }
+
+    static Player player(String name) {
+        return stub(Player.class, (proxy, method, args) -> {
+            if (method.getName().equals("getName")) {
+                return name;
+            }
+            return defaultValue(method.getReturnType());
+        });
+    }
+
+    static World world(String name) {
+        return stub(World.class, (proxy, method, args) -> {
+            if (method.getName().equals("getName")) {
+                return name;
+            }
+            return defaultValue(method.getReturnType());
+        });
+    }
+
+    static Block block(World world) {
+        return stub(Block.class, (proxy, method, args) -> {
+            if (method.getName().equals("getWorld")) {
+                return world;
+            }
+            if (method.getName().equals("getLocation")) {
+                return new Location(world, 1, 64, 1);
+            }
+            return defaultValue(method.getReturnType());
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            switch (method.getName()) {
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+            default:
+                return handler.invoke(proxy, method, args);
+            }
+        });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == String.class) {
+            return "PPLoader-benchmark";
+        }
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == float.class) {
+            return 0f;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.pyloader;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.python.core.Py;
+import org.python.core.PyDictionary;
+import org.python.core.PyObject;
+import org.python.core.PySystemState;
+import org.python.util.PythonInterpreter;
+
+/**
+ * Conversion of bukkit events to python objects, as done for every event passed to python handlers,
+ * through jython's proxy and through {@link PythonEventAdapter}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventConversionBenchmark {
+
+    @Param({ "PlayerMoveEvent", "PlayerJoinEvent", "BlockBreakEvent" })
+    public String type;
+
+    private Event event;
+    private PyObject callGetter;
+
+    @Setup
+    public void setup() {
+        BenchmarkServer.install();
+        World world = BenchmarkServer.world("world");
+        Player player = BenchmarkServer.player("bench");
+        switch (type) {
+        case "PlayerMoveEvent":
+            event = new PlayerMoveEvent(player, new Location(world, 0, 64, 0), new Location(world, 0.5, 64, 0));
+            break;
+        case "PlayerJoinEvent":
+            event = new PlayerJoinEvent(player, "bench joined");
+            break;
+        default:
+            event = new BlockBreakEvent(BenchmarkServer.block(world), player);
+        }
+        PythonInterpreter interp = new PythonInterpreter(new PyDictionary(), new PySystemState());
+        interp.exec("def call_getter(event):\n"
+                + "    return event.getEventName()\n");
+        callGetter = interp.get("call_getter");
+    }
+
+    @Benchmark
+    public PyObject java2py() {
+        return Py.java2py(event);
+    }
+
+    @Benchmark
+    public PyObject java2pyAndGetter() {
+        return Py.java2py(event).invoke("getEventName");
+    }
+
+    @Benchmark
+    public PyObject java2pyGetterFromPython() {
+        return callGetter.__call__(Py.java2py(event));
+    }
+
+    @Benchmark
+    public PyObject adapter() {
+        return new PythonEventAdapter(event);
+    }
+
+    @Benchmark
+    public PyObject adapterAndGetter() {
+        return new PythonEventAdapter(event).invoke("getEventName");
+    }
+
+    @Benchmark
+    public PyObject adapterGetterFromPython() {
+        return callGetter.__call__(new PythonEventAdapter(event));
+    }
+}
@@ -0,0 +1,119 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.pyloader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.plugin.RegisteredListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.python.core.PyDictionary;
+import org.python.core.PyObject;
+import org.python.core.PySystemState;
+import org.python.util.PythonInterpreter;
+
+/**
+ * Dispatch of a bukkit event through the registered listeners created by
+ * {@link PythonPluginLoader#createRegisteredListeners} into python handlers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventDispatchBenchmark {
+
+    /**
+     * number of python handlers of the listener for the event
+     */
+    @Param({ "1", "4", "16" })
+    public int handlers;
+
+    /**
+     * whether the handlers are registered with batch=True, they are flushed after every
+     * EVENTS_PER_TICK events as the server would do once per tick
+     */
+    @Param({ "false", "true" })
+    public boolean batch;
+
+    private static final int EVENTS_PER_TICK = 100;
+
+    private RegisteredListener[] listeners;
+    private PythonEventHandler[] batched;
+    private PythonPlugin plugin;
+    private PlayerMoveEvent event;
+    private int events;
+
+    @Setup
+    public void setup() {
+        PythonPluginLoader loader = new PythonPluginLoader(BenchmarkServer.install());
+        PythonInterpreter interp = new PythonInterpreter(new PyDictionary(), new PySystemState());
+        interp.exec("calls = [0]\n"
+                + "def handler(event):\n"
+                + "    calls[0] += 1\n");
+        PyObject handler = interp.get("handler");
+
+        PythonListener listener = new PythonListener();
+        for (int i = 0; i < handlers; i++) {
+            // distinct priorities up to the number of priorities, then several handlers per priority
+            listener.addHandler(handler, PlayerMoveEvent.class,
+                    EventPriority.values()[i % EventPriority.values().length], Collections.singletonMap("batch", batch));
+        }
+        batched = batch ? listener.handlers.get(PlayerMoveEvent.class).toArray(new PythonEventHandler[0])
+                : new PythonEventHandler[0];
+        plugin = new PythonPlugin();
+        Map<Class<? extends Event>, Set<RegisteredListener>> registered = loader.createRegisteredListeners(listener,
+                plugin);
+        List<RegisteredListener> all = new ArrayList<RegisteredListener>();
+        for (Set<RegisteredListener> set : registered.values()) {
+            all.addAll(set);
+        }
+        listeners = all.toArray(new RegisteredListener[0]);
+
+        World world = BenchmarkServer.world("world");
+        event = new PlayerMoveEvent(BenchmarkServer.player("bench"), new Location(world, 0, 64, 0),
+                new Location(world, 0.5, 64, 0));
+    }
+
+    @Benchmark
+    public void dispatch() throws EventException {
+        for (RegisteredListener listener : listeners) {
+            listener.callEvent(event);
+        }
+        if (batched.length > 0 && ++events == EVENTS_PER_TICK) {
+            events = 0;
+            for (PythonEventHandler handler : batched) {
+                handler.batch.flush(handler, plugin);
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.pyloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.plugin.InvalidPluginException;
+import org.bukkit.plugin.Plugin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Loading of a python plugin, from reading plugin.yml to the created plugin instance.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PluginLoadBenchmark {
+
+    @Param({ "pyp", "dir" })
+    public String format;
+
+    private PythonPluginLoader loader;
+    private File dir;
+    private File file;
+
+    /**
+     * plugin loaded by the last invocation, released after it
+     */
+    private Plugin loaded;
+
+    @Setup
+    public void setup() throws IOException {
+        loader = new PythonPluginLoader(BenchmarkServer.install());
+        dir = Files.createTempDirectory("pploader-bench").toFile();
+        file = BenchmarkPlugins.write(dir, "BenchPlugin", format);
+    }
+
+    @Benchmark
+    public Plugin load() throws InvalidPluginException {
+        loaded = loader.loadPlugin(file);
+        return loaded;
+    }
+
+    @TearDown(Level.Invocation)
+    public void release() {
+        if (loaded != null) {
+            loader.releasePlugin((PythonPlugin) loaded, null);
+            loaded = null;
+        }
+    }
+
+    @TearDown
+    public void cleanup() throws IOException {
+        BenchmarkPlugins.delete(dir);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.pyloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.plugin.InvalidPluginException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Reading a resource of a python plugin through {@link PythonPlugin#getResource(String)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResourceBenchmark {
+
+    @Param({ "pyp", "dir" })
+    public String format;
+
+    private PythonPluginLoader loader;
+    private File dir;
+    private PythonPlugin plugin;
+
+    @Setup
+    public void setup() throws IOException, InvalidPluginException {
+        loader = new PythonPluginLoader(BenchmarkServer.install());
+        dir = Files.createTempDirectory("pploader-bench").toFile();
+        plugin = (PythonPlugin) loader.loadPlugin(BenchmarkPlugins.write(dir, "BenchPlugin", format));
+    }
+
+    @Benchmark
+    public byte[] getResource() throws IOException {
+        try (InputStream stream = plugin.getResource("config.yml")) {
+            return stream.readAllBytes();
+        }
+    }
+
+    @TearDown
+    public void cleanup() throws IOException {
+        loader.releasePlugin(plugin, null);
+        BenchmarkPlugins.delete(dir);
+    }
+}
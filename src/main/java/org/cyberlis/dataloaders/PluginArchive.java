@@ -0,0 +1,140 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.dataloaders;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Loader wide registry of opened plugin zips. Every zip is opened once and shared
+ * by all users of the same file, with a reference count, and closed when the last
+ * user releases it. The central directory is read once on opening and looked up
+ * by name afterwards, so getting an entry does not touch the file system.
+ */
+public final class PluginArchive {
+
+    /**
+     * absolute path to the currently opened archive of that file
+     */
+    private static final Map<String, PluginArchive> archives = new HashMap<String, PluginArchive>();
+
+    private final String path;
+    private final ZipFile zip;
+    private final long lastModified;
+    private final long length;
+    private int references = 0;
+
+    private PluginArchive(File file) throws IOException {
+        this.path = file.getAbsolutePath();
+        this.lastModified = file.lastModified();
+        this.length = file.length();
+        this.zip = new ZipFile(file);
+    }
+
+    /**
+     * Get a handle to the archive of a file, opening it if nobody has it open yet.
+     * If the file changed since it was opened, a new archive is opened, users of the
+     * old one keep it until they release it. Every call must be matched by a call to
+     * {@link #release()}.
+     *
+     * @param file zip file
+     * @return archive of the file
+     * @throws IOException thrown if there is an error opening the zip
+     */
+    public static PluginArchive acquire(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        synchronized (archives) {
+            PluginArchive archive = archives.get(path);
+            if (archive == null || archive.lastModified != file.lastModified() || archive.length != file.length()) {
+                archive = new PluginArchive(file);
+                archives.put(path, archive);
+            }
+            archive.references++;
+            return archive;
+        }
+    }
+
+    /**
+     * Give up a handle returned by {@link #acquire(File)}, the zip is closed when the last handle is released.
+     *
+     * @throws IOException thrown if there is an error closing the zip
+     */
+    public void release() throws IOException {
+        synchronized (archives) {
+            if (references == 0) {
+                return;
+            }
+            references--;
+            if (references > 0) {
+                return;
+            }
+            if (archives.get(path) == this) {
+                archives.remove(path);
+            }
+        }
+        zip.close();
+    }
+
+    /**
+     * @return number of plugin files with an open archive
+     */
+    public static int getOpenCount() {
+        synchronized (archives) {
+            return archives.size();
+        }
+    }
+
+    /**
+     * @return modification time of the zip file when it was opened
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return the opened zip, valid until the handle is released
+     */
+    public ZipFile getZip() {
+        return zip;
+    }
+
+    /**
+     * @param name name of the entry
+     * @return whether the archive contains the entry, looked up in the central directory read on opening
+     */
+    public boolean contains(String name) {
+        return zip.getEntry(name) != null;
+    }
+
+    /**
+     * @param name name of the entry
+     * @return stream of the entry or null if the archive does not contain it
+     * @throws IOException thrown if there is an error reading the zip
+     */
+    public InputStream getStream(String name) throws IOException {
+        ZipEntry entry = zip.getEntry(name);
+        if (entry == null) {
+            return null;
+        }
+        return zip.getInputStream(entry);
+    }
+}
@@ -18,6 +18,9 @@ package org.cyberlis.dataloaders;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Used on initialization of a plugin, because I now have three different kinds
@@ -44,6 +47,42 @@ public abstract class PluginDataFile {
      */
     public abstract InputStream getStream(String filename) throws IOException;
 
+    /**
+     * Check for a file inside the datafile without reading it.
+     * @param filename name to check
+     * @return whether the file exists
+     * @throws IOException thrown if checking fails
+     */
+    public boolean exists(String filename) throws IOException {
+        try (InputStream stream = getStream(filename)) {
+            return stream != null;
+        }
+    }
+
+    /**
+     * @return names of all files inside the datafile, separated by '/'
+     * @throws IOException thrown if listing fails
+     */
+    public List<String> getEntryNames() throws IOException {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @param filename name of a file inside the datafile
+     * @return path of the file on the file system, null if it does not exist or is not a plain file
+     */
+    public Path getPath(String filename) {
+        return null;
+    }
+
+    /**
+     * @param filename name of a file inside the datafile
+     * @return value which changes whenever the file changes, like its modification time
+     */
+    public long getStamp(String filename) {
+        return 0;
+    }
+
     /**
      * @return whether to add the file for this PluginDataFile to the pythonpath
      */
@@ -20,6 +20,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  *
@@ -46,6 +51,32 @@ public class PluginPythonDirectory extends PluginDataFile {
         return new FileInputStream(f);
     }
 
+    @Override
+    public boolean exists(String filename) {
+        return new File(dir, filename).isFile();
+    }
+
+    @Override
+    public List<String> getEntryNames() throws IOException {
+        Path root = dir.toPath();
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(Files::isRegularFile)
+                    .map((file) -> root.relativize(file).toString().replace(File.separatorChar, '/'))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public Path getPath(String filename) {
+        File f = new File(dir, filename);
+        return f.isFile() ? f.toPath() : null;
+    }
+
+    @Override
+    public long getStamp(String filename) {
+        return new File(dir, filename).lastModified();
+    }
+
     @Override
     public boolean shouldAddPathEntry() {
         return true;
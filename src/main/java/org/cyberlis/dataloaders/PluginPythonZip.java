@@ -19,21 +19,34 @@ package org.cyberlis.dataloaders;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
+import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import org.bukkit.plugin.InvalidPluginException;
 
 /**
- *
+ * Plugin zip, backed by a shared handle of the {@link PluginArchive} registry
+ * which stays open until this data file is closed.
  */
 public class PluginPythonZip extends PluginDataFile {
 
     /**
-     * Zipfile we belong to
+     * Zipfile we belong to, null once this data file is closed
      */
     public ZipFile zip;
 
+    /**
+     * handle of the opened zip, null while closed
+     */
+    private PluginArchive archive;
+
+    /**
+     * whether {@link #close()} was called, the archive is not reopened afterwards
+     */
+    private boolean released = false;
+
     /**
      * Absolute path of the zipfile, for reloading purposes.
      * @author gdude2002
@@ -54,30 +67,77 @@ public class PluginPythonZip extends PluginDataFile {
     }
 
     /**
-     * @throws IOException thrown if there is an error opening zip
+     * @throws IOException thrown if there is an error opening zip or this data file was closed
      */
-
     @Override
     public void reload() throws IOException {
-        if (closed) {
-            File fh = new File(filepath);
-            zip = new ZipFile(fh);
-            closed = false;
+        synchronized (this) {
+            if (released) {
+                throw new IOException(filepath + " is closed");
+            }
+            if (closed) {
+                archive = PluginArchive.acquire(new File(filepath));
+                zip = archive.getZip();
+                closed = false;
+            }
         }
     }
 
-    public void close() throws IOException {
-        zip.close();
+    public synchronized void close() throws IOException {
+        released = true;
         closed = true;
+        zip = null;
+        if (archive != null) {
+            PluginArchive current = archive;
+            archive = null;
+            current.release();
+        }
     }
 
     @Override
     public InputStream getStream(String filename) throws IOException {
-        ZipEntry entry = zip.getEntry(filename);
-        if (entry == null) {
-            return null;
+        PluginArchive current;
+        synchronized (this) {
+            current = archive;
+        }
+        if (current == null) {
+            throw new IOException(filepath + " is closed");
+        }
+        return current.getStream(filename);
+    }
+
+    @Override
+    public boolean exists(String filename) throws IOException {
+        PluginArchive current;
+        synchronized (this) {
+            current = archive;
+        }
+        if (current == null) {
+            throw new IOException(filepath + " is closed");
+        }
+        return current.contains(filename);
+    }
+
+    @Override
+    public List<String> getEntryNames() throws IOException {
+        PluginArchive current;
+        synchronized (this) {
+            current = archive;
         }
-        return zip.getInputStream(entry);
+        if (current == null) {
+            throw new IOException(filepath + " is closed");
+        }
+        return current.getZip().stream().filter((entry) -> !entry.isDirectory()).map(ZipEntry::getName)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * The entries of an opened archive do not change, a changed zip file is only
+     * seen after reopening, so the stamp is the modification time of the archive.
+     */
+    @Override
+    public synchronized long getStamp(String filename) {
+        return archive == null ? 0 : archive.getLastModified();
     }
 
     @Override
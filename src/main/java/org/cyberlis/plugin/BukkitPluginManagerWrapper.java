@@ -17,7 +17,10 @@ along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
 package org.cyberlis.plugin;
 
 import java.io.File;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.lang.reflect.Field;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.regex.Pattern;
@@ -29,6 +32,7 @@ import org.bukkit.plugin.InvalidPluginException;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.PluginLoader;
 import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.SimplePluginManager;
 import org.bukkit.plugin.java.JavaPluginLoader;
 
 public class BukkitPluginManagerWrapper implements PluginManagerWrapper {
@@ -36,6 +40,22 @@ public class BukkitPluginManagerWrapper implements PluginManagerWrapper {
     private static JavaPluginLoader javapluginloader = null;
     private static Map<String, ?> javaLoaders = null;
 
+    private final VarHandle plugins;
+    private final VarHandle lookupNames;
+
+    /**
+     * @throws IllegalStateException if SimplePluginManager does not have the fields used by {@link #addPlugin(Plugin)}
+     */
+    public BukkitPluginManagerWrapper() {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(SimplePluginManager.class, MethodHandles.lookup());
+            plugins = lookup.findVarHandle(SimplePluginManager.class, "plugins", List.class);
+            lookupNames = lookup.findVarHandle(SimplePluginManager.class, "lookupNames", Map.class);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unsupported bukkit version, SimplePluginManager is missing plugins or lookupNames", e);
+        }
+    }
+
     @Override
     public Plugin loadPlugin(File file) {
         try {
@@ -45,6 +65,24 @@ public class BukkitPluginManagerWrapper implements PluginManagerWrapper {
         }
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public void addPlugin(Plugin plugin) {
+        PluginManager pm = Bukkit.getPluginManager();
+        try {
+            synchronized (pm) {
+                ((List<Plugin>) plugins.get(pm)).add(plugin);
+                Map<String, Plugin> names = (Map<String, Plugin>) lookupNames.get(pm);
+                names.put(plugin.getDescription().getName(), plugin);
+                for (String provided : plugin.getDescription().getProvides()) {
+                    names.putIfAbsent(provided, plugin);
+                }
+            }
+        } catch (ClassCastException e) {
+            throw new IllegalStateException("Failed to register plugin " + plugin.getName(), e);
+        }
+    }
+
     @Override
     public void enablePlugin(Plugin plugin) {
         Bukkit.getPluginManager().enablePlugin(plugin);
@@ -17,11 +17,15 @@ along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
 package org.cyberlis.plugin;
 
 import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.URLClassLoader;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -34,6 +38,11 @@ import org.bukkit.plugin.PluginLoader;
 import org.bukkit.plugin.PluginManager;
 import org.bukkit.plugin.java.JavaPluginLoader;
 
+/**
+ * Plugin manager access on paper. The methods of PaperPluginManagerImpl and its
+ * instance manager are resolved once into method handles, so calls through this
+ * wrapper, like callEvent, cost about the same as a direct call.
+ */
 public class PaperPluginManagerWrapper implements PluginManagerWrapper {
     private final Object instance;
     private final Object manager;
@@ -41,13 +50,29 @@ public class PaperPluginManagerWrapper implements PluginManagerWrapper {
     private static JavaPluginLoader javapluginloader = null;
     private static Map<String, ?> javaLoaders = null;
 
+    private final MethodHandle loadPath;
+    private final MethodHandle loadPlugin;
+    private final MethodHandle enablePlugin;
+    private final MethodHandle disablePlugin;
+    private final MethodHandle getPlugin;
+    private final MethodHandle getPlugins;
+    private final MethodHandle registerInterface;
+    private final MethodHandle callEvent;
+    private final MethodHandle useTimings;
+    private final Map<String, Plugin> lookupNames;
+    private final List<Plugin> plugins;
+
+    /**
+     * @throws IllegalStateException if paper does not have one of the methods or fields used, listing all missing ones
+     */
+    @SuppressWarnings("unchecked")
     public PaperPluginManagerWrapper() {
         try {
             Class<?> pluginManagerClass = Class.forName("io.papermc.paper.plugin.manager.PaperPluginManagerImpl");
             this.manager = pluginManagerClass.getMethod("getInstance").invoke(null);
             Field instanceManagerF = this.manager.getClass().getDeclaredField("instanceManager");
             instanceManagerF.setAccessible(true);
-            this.instance = instanceManagerF.get(instanceManagerF);
+            this.instance = instanceManagerF.get(this.manager);
         } catch (ClassNotFoundException e) {
             throw new IllegalStateException("Failed to find PaperPluginManagerImpl class", e);
         } catch (InvocationTargetException | IllegalAccessException | NoSuchMethodException e) {
@@ -55,47 +80,96 @@ public class PaperPluginManagerWrapper implements PluginManagerWrapper {
         } catch (ReflectiveOperationException e) {
             throw new IllegalStateException("Failed to get instanceManager field", e);
         }
+
+        List<String> missing = new ArrayList<String>();
+        loadPath = bind(instance, "loadPlugin", MethodType.methodType(Plugin.class, Path.class), missing);
+        loadPlugin = bind(instance, "loadPlugin", MethodType.methodType(void.class, Plugin.class), missing);
+        enablePlugin = bind(instance, "enablePlugin", MethodType.methodType(void.class, Plugin.class), missing);
+        disablePlugin = bind(instance, "disablePlugin", MethodType.methodType(void.class, Plugin.class), missing);
+        getPlugin = bind(instance, "getPlugin", MethodType.methodType(Plugin.class, String.class), missing);
+        getPlugins = bind(instance, "getPlugins", MethodType.methodType(Plugin[].class), missing);
+        registerInterface = bind(manager, "registerInterface", MethodType.methodType(void.class, Class.class), missing);
+        callEvent = bind(manager, "callEvent", MethodType.methodType(void.class, Event.class), missing);
+        useTimings = bind(manager, "useTimings", MethodType.methodType(boolean.class), missing);
+        lookupNames = (Map<String, Plugin>) fieldValue(instance, "lookupNames", missing);
+        plugins = (List<Plugin>) fieldValue(instance, "plugins", missing);
+        if (!missing.isEmpty()) {
+            throw new IllegalStateException("Unsupported paper version, PaperPluginManagerImpl is missing " + missing);
+        }
+    }
+
+    /**
+     * @param target object to bind the method to
+     * @param name method name
+     * @param type parameter and return types the handle is adapted to
+     * @param missing list to add the signature to if the method can not be found
+     * @return handle bound to target or null if missing
+     */
+    private static MethodHandle bind(Object target, String name, MethodType type, List<String> missing) {
+        try {
+            Method method = target.getClass().getMethod(name, type.parameterArray());
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method).bindTo(target).asType(type);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            missing.add(target.getClass().getSimpleName() + "." + name + type);
+            return null;
+        }
+    }
+
+    /**
+     * @param target object to read the field of
+     * @param name field name
+     * @param missing list to add the field to if it can not be read
+     * @return field value or null if missing
+     */
+    private static Object fieldValue(Object target, String name, List<String> missing) {
+        try {
+            Field field = target.getClass().getDeclaredField(name);
+            field.setAccessible(true);
+            return field.get(target);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            missing.add(target.getClass().getSimpleName() + "." + name);
+            return null;
+        }
     }
 
     @Override
     public Plugin loadPlugin(File file) {
         try {
-            Method loadMethod = this.instance.getClass().getMethod("loadPlugin", Path.class);
-            loadMethod.setAccessible(true);
-            return (Plugin) loadMethod.invoke(this.instance, file.toPath());
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException | SecurityException e) {
-            e.printStackTrace();
+            return (Plugin) loadPath.invokeExact(file.toPath());
+        } catch (Throwable t) {
+            t.printStackTrace();
         }
         return null;
     }
 
+    @Override
+    public void addPlugin(Plugin plugin) {
+        try {
+            loadPlugin.invokeExact(plugin);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Failed to register plugin " + plugin.getName(), t);
+        }
+    }
+
     @Override
     public void enablePlugin(Plugin plugin) {
         try {
-            Method enableMethod = this.instance.getClass().getMethod("enablePlugin", Plugin.class);
-            enableMethod.setAccessible(true);
-            enableMethod.invoke(this.instance, plugin);
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException | SecurityException e) {
-            e.printStackTrace();
+            enablePlugin.invokeExact(plugin);
+        } catch (Throwable t) {
+            t.printStackTrace();
         }
      }
 
     @Override
     public void disablePlugin(Plugin plugin) {
         try {
-            Method disableMethod = this.instance.getClass().getMethod("disablePlugin", Plugin.class);
-            disableMethod.setAccessible(true);
-            disableMethod.invoke(this.instance, plugin);
-
-            Field lookupNamesField = this.instance.getClass().getField("lookupNames");
-            Map<String, Plugin> map = (Map<String, Plugin>)lookupNamesField.get(this.instance);
-            Field pluginsField = this.instance.getClass().getField("plugins");
-            List<Plugin> list  = (List<Plugin>)pluginsField.get(this.instance);
-
-            map.remove(plugin.getName().toLowerCase());
-            list.remove(plugin);
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException | SecurityException |  NoSuchFieldException e) {
-            e.printStackTrace();
+            disablePlugin.invokeExact(plugin);
+
+            lookupNames.remove(plugin.getName().toLowerCase());
+            plugins.remove(plugin);
+        } catch (Throwable t) {
+            t.printStackTrace();
         }
 
         ClassLoader classLoader = plugin.getClass().getClassLoader();
@@ -106,19 +180,14 @@ public class PaperPluginManagerWrapper implements PluginManagerWrapper {
                 throw new IllegalStateException("Failed to close class loader", e);
             }
         }
-
-        System.gc();
-        System.runFinalization();
     }
 
     @Override
     public Plugin getPlugin(String name) {
         try {
-            Method getPluginMethod = this.instance.getClass().getMethod("getPlugin", String.class);
-            getPluginMethod.setAccessible(true);
-            return (Plugin) getPluginMethod.invoke(this.instance, name);
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException | SecurityException e) {
-            e.printStackTrace();
+            return (Plugin) getPlugin.invokeExact(name);
+        } catch (Throwable t) {
+            t.printStackTrace();
         }
         return null;
     }
@@ -126,11 +195,9 @@ public class PaperPluginManagerWrapper implements PluginManagerWrapper {
     @Override
     public Plugin[] getPlugins() {
         try {
-            Method getPluginMethod = this.instance.getClass().getMethod("getPlugins");
-            getPluginMethod.setAccessible(true);
-            return (Plugin[]) getPluginMethod.invoke(this.instance);
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException | SecurityException e) {
-            e.printStackTrace();
+            return (Plugin[]) getPlugins.invokeExact();
+        } catch (Throwable t) {
+            t.printStackTrace();
         }
         return null;
     }
@@ -138,33 +205,30 @@ public class PaperPluginManagerWrapper implements PluginManagerWrapper {
     @Override
     public void registerInterface(Class<? extends PluginLoader> loader) throws IllegalArgumentException {
         try {
-            Method registerInterfaceMethod = this.instance.getClass().getMethod("registerInterface", Class.class);
-            registerInterfaceMethod.setAccessible(true);
-            registerInterfaceMethod.invoke(this.instance, loader);
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException | SecurityException e) {
-            e.printStackTrace();
+            registerInterface.invokeExact((Class<?>) loader);
+        } catch (Throwable t) {
+            t.printStackTrace();
         }
     }
 
     @Override
     public void callEvent(Event event) throws IllegalStateException {
         try {
-            Method callEventMethod = this.manager.getClass().getMethod("callEvent", Event.class);
-            callEventMethod.setAccessible(true);
-            callEventMethod.invoke(this.instance, event);
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException | SecurityException e) {
-            e.printStackTrace();
+            callEvent.invokeExact(event);
+        } catch (IllegalStateException e) {
+            // thrown by paper for events fired on the wrong thread, same as a direct call
+            throw e;
+        } catch (Throwable t) {
+            t.printStackTrace();
         }
     }
 
     @Override
     public boolean useTimings() {
         try {
-            Method useTimingsMethod = this.instance.getClass().getMethod("useTimings");
-            useTimingsMethod.setAccessible(true);
-            return (boolean)useTimingsMethod.invoke(this.manager);
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException | SecurityException e) {
-            e.printStackTrace();
+            return (boolean) useTimings.invokeExact();
+        } catch (Throwable t) {
+            t.printStackTrace();
         }
         return false;
     }
@@ -29,6 +29,15 @@ public interface PluginManagerWrapper {
 
     Plugin loadPlugin(File file);
 
+    /**
+     * Register a plugin which was already loaded by its plugin loader, like the
+     * plugin manager does at the end of {@link #loadPlugin(File)}.
+     *
+     * @param plugin plugin to register
+     * @throws IllegalStateException if the plugin manager did not take the plugin
+     */
+    void addPlugin(Plugin plugin);
+
     void enablePlugin(Plugin plugin);
 
     void disablePlugin(Plugin plugin);
@@ -0,0 +1,114 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.pyloader;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+
+/**
+ * Event identified by a name and carrying any payload, which python plugins can
+ * fire and listen for without defining an event class. Every name has its own
+ * handler list, python handlers subscribe to a name with
+ * {@code @PythonEventHandler(DynamicPythonEvent, name="arena.start")}, java
+ * plugins by registering in {@link #getHandlerList(String)}.
+ */
+public class DynamicPythonEvent extends Event implements Cancellable {
+    private static final Map<String, HandlerList> handlers = new ConcurrentHashMap<String, HandlerList>();
+
+    /**
+     * list of the names nobody subscribed to, nothing is ever registered in it
+     */
+    private static final HandlerList unsubscribed = new HandlerList();
+
+    private final String name;
+    private final Object payload;
+    private boolean cancelled;
+
+    /**
+     * @param name name of the event
+     * @param payload data passed to the handlers
+     */
+    public DynamicPythonEvent(String name, Object payload) {
+        this(name, payload, false);
+    }
+
+    /**
+     * @param name name of the event
+     * @param payload data passed to the handlers
+     * @param async whether the event is fired off the server thread
+     */
+    public DynamicPythonEvent(String name, Object payload, boolean async) {
+        super(async);
+        if (name == null) {
+            throw new IllegalArgumentException("Event name cannot be null");
+        }
+        this.name = name;
+        this.payload = payload;
+    }
+
+    /**
+     * @return name of the event
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return data passed to the handlers
+     */
+    public Object getPayload() {
+        return payload;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public void setCancelled(boolean cancel) {
+        this.cancelled = cancel;
+    }
+
+    @Override
+    public String getEventName() {
+        return name;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        // firing must not create lists, names can be made up per player or per call
+        HandlerList list = handlers.get(name);
+        return list != null ? list : unsubscribed;
+    }
+
+    /**
+     * Get the handler list of a name to subscribe to it, the list is created on the first call
+     * and kept, like every bukkit handler list.
+     *
+     * @param name name of the event
+     * @return handler list of the events with this name
+     */
+    public static HandlerList getHandlerList(String name) {
+        HandlerList list = handlers.get(name);
+        return list != null ? list : handlers.computeIfAbsent(name, (key) -> new HandlerList());
+    }
+}
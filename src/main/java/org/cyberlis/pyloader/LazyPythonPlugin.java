@@ -0,0 +1,183 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.pyloader;
+
+import java.util.List;
+import java.util.logging.Level;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.InvalidPluginException;
+import org.bukkit.plugin.RegisteredListener;
+
+/**
+ * Stand-in for a python plugin with "lazy: true" in its plugin.yml. Bukkit only
+ * sees this plugin, with the commands from plugin.yml, and listeners for the
+ * events listed in "lazy-events". The python runtime of the plugin is created and
+ * its main module run when the first of these commands or events reaches it,
+ * commands and events are forwarded to the python plugin from then on.
+ */
+public class LazyPythonPlugin extends PythonPlugin {
+
+    private final PythonPluginLoader pluginLoader;
+    private final List<String> events;
+
+    /**
+     * listener owning the stubs for "lazy-events"
+     */
+    private final Listener stubs = new Listener() { };
+
+    /**
+     * python plugin, null until activated
+     */
+    private volatile PythonPlugin delegate;
+
+    /**
+     * whether creating the python plugin failed, it is not tried again until the plugin is reloaded
+     */
+    private volatile boolean failed = false;
+
+    /**
+     * @param pluginLoader loader to create the python plugin with
+     * @param events names of the event classes which activate the plugin
+     */
+    LazyPythonPlugin(PythonPluginLoader pluginLoader, List<String> events) {
+        this.pluginLoader = pluginLoader;
+        this.events = events;
+    }
+
+    @Override
+    PythonPlugin active() {
+        PythonPlugin current = delegate;
+        return current != null ? current : this;
+    }
+
+    /**
+     * @return whether the python plugin was created already
+     */
+    public boolean isActivated() {
+        return delegate != null;
+    }
+
+    @Override
+    public void onEnable() {
+        for (String name : events) {
+            Class<? extends Event> type;
+            try {
+                type = Class.forName(name, true, Event.class.getClassLoader()).asSubclass(Event.class);
+            } catch (ClassNotFoundException | ClassCastException e) {
+                getLogger().warning("[PPLoader] Unknown lazy event " + name);
+                continue;
+            }
+            getServer().getPluginManager().registerEvent(type, stubs, EventPriority.LOWEST,
+                    (listener, event) -> onStubEvent(type, event), this, false);
+        }
+        getServer().getLogger().info("[PPLoader] " + getDescription().getFullName()
+                + " is lazy, it is started by its first command" + (events.isEmpty() ? "" : " or event"));
+    }
+
+    @Override
+    public void onDisable() {
+        HandlerList.unregisterAll(stubs);
+        PythonPlugin current = delegate;
+        if (current != null) {
+            current.setEnabled(false);
+            // the python plugin registered its listeners and tasks for itself, bukkit only cleans up after this one
+            HandlerList.unregisterAll(current);
+            getServer().getScheduler().cancelTasks(current);
+        }
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        PythonPlugin current = activate();
+        return current != null && current.onCommand(sender, command, label, args);
+    }
+
+    @Override
+    public List<String> onTabComplete(CommandSender sender, Command cmd, String alias, String[] args) {
+        PythonPlugin current = activate();
+        return current == null ? null : current.onTabComplete(sender, cmd, alias, args);
+    }
+
+    private void onStubEvent(Class<? extends Event> type, Event event) {
+        if (!type.isInstance(event) || delegate != null || failed) {
+            return;
+        }
+        if (!getServer().isPrimaryThread()) {
+            // enabling registers listeners and tasks, which bukkit only allows on the server thread,
+            // the python plugin gets the events after this one
+            getServer().getScheduler().runTask(this, this::activate);
+            return;
+        }
+        PythonPlugin current = activate();
+        if (current == null) {
+            return;
+        }
+        // listeners registered while activating missed this event, as bukkit already took the list of listeners
+        for (RegisteredListener listener : event.getHandlers().getRegisteredListeners()) {
+            if (listener.getPlugin() == current) {
+                try {
+                    listener.callEvent(event);
+                } catch (Throwable t) {
+                    getLogger().log(Level.SEVERE, "Could not pass event " + event.getEventName() + " to "
+                            + getDescription().getFullName(), t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Create and enable the python plugin if that did not happen yet.
+     *
+     * @return python plugin, null if it could not be created now or before
+     */
+    synchronized PythonPlugin activate() {
+        if (delegate != null || failed || !isEnabled()) {
+            return delegate;
+        }
+        long start = System.nanoTime();
+        PythonPlugin created = null;
+        try {
+            created = pluginLoader.createPlugin(getFile(), getDataFile(), getDescription(), getDataFolder());
+            created.owner = this;
+            created.resourceCache = resourceCache;
+            created.configWriter = configWriter;
+            created.setEnabled(true);
+        } catch (InvalidPluginException | RuntimeException e) {
+            // running the main module again for every command or event would fail the same way
+            failed = true;
+            HandlerList.unregisterAll(stubs);
+            if (created != null) {
+                HandlerList.unregisterAll(created);
+                getServer().getScheduler().cancelTasks(created);
+            }
+            getServer().getLogger().log(Level.SEVERE, "[PPLoader] Could not start lazy plugin "
+                    + getDescription().getFullName() + ", it stays stopped until it is reloaded", e);
+            return null;
+        }
+        delegate = created;
+        HandlerList.unregisterAll(stubs);
+        getServer().getLogger().info(String.format("[PPLoader] Started lazy plugin %s in %d ms",
+                getDescription().getFullName(), (System.nanoTime() - start) / 1000000));
+        return created;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.pyloader;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+import org.bukkit.plugin.Plugin;
+import org.python.core.Py;
+import org.python.core.PySystemState;
+
+/**
+ * Runs python handlers registered with async=True on virtual threads. The number of
+ * handler calls waiting or running is bounded, calls beyond that are either dropped
+ * or run on the calling thread, depending on the overflow policy.
+ */
+public class PythonAsyncDispatcher {
+
+    /**
+     * what to do with a handler call when the queue is full
+     */
+    public enum Overflow {
+        /**
+         * drop the call and count it
+         */
+        DROP,
+        /**
+         * run the call on the thread which fired the event
+         */
+        CALLER_RUNS
+    }
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("PPLoader-async-", 0).factory());
+    private final Semaphore permits;
+    private final int queueSize;
+    private final Overflow overflow;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder callerRuns = new LongAdder();
+
+    /**
+     * @param queueSize maximum number of handler calls waiting or running
+     * @param overflow what to do with handler calls beyond queueSize
+     */
+    public PythonAsyncDispatcher(int queueSize, Overflow overflow) {
+        this.queueSize = queueSize;
+        this.permits = new Semaphore(queueSize);
+        this.overflow = overflow;
+    }
+
+    /**
+     * @param handler async handler to call
+     * @param snapshot snapshot of the event to pass
+     * @param plugin plugin the handler belongs to
+     */
+    void submit(PythonEventHandler handler, PythonEventSnapshot snapshot, Plugin plugin) {
+        if (!permits.tryAcquire()) {
+            if (overflow == Overflow.CALLER_RUNS) {
+                callerRuns.increment();
+                call(handler, snapshot, plugin);
+            } else {
+                dropped.increment();
+            }
+            return;
+        }
+        submitted.increment();
+        try {
+            executor.execute(() -> {
+                try {
+                    call(handler, snapshot, plugin);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            dropped.increment();
+        }
+    }
+
+    private void call(PythonEventHandler handler, PythonEventSnapshot snapshot, Plugin plugin) {
+        PySystemState previous = null;
+        if (plugin instanceof PythonPlugin && ((PythonPlugin) plugin).interp != null) {
+            previous = Py.setSystemState(((PythonPlugin) plugin).interp.getSystemState());
+        }
+        long start = System.nanoTime();
+        try {
+            handler.handler.__call__(snapshot);
+            handler.stats.record(System.nanoTime() - start, false);
+            completed.increment();
+        } catch (Throwable t) {
+            handler.stats.record(System.nanoTime() - start, true);
+            failed.increment();
+            plugin.getLogger().log(Level.SEVERE, "Could not pass event " + snapshot.getEventClass().getSimpleName()
+                    + " to async handler of " + plugin.getDescription().getFullName(), t);
+        } finally {
+            if (previous != null) {
+                Py.setSystemState(previous);
+            }
+        }
+    }
+
+    /**
+     * Stop accepting handler calls, calls already queued still run.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * @return number of handler calls currently waiting or running
+     */
+    public int getPending() {
+        return queueSize - permits.availablePermits();
+    }
+
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getCallerRuns() {
+        return callerRuns.sum();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.pyloader;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.python.Version;
+import org.python.core.BytecodeLoader;
+import org.python.core.PyCode;
+import org.python.core.imp;
+
+/**
+ * On-disk cache of compiled python code. Entries are keyed by the SHA-256 of the
+ * module name, the source and the jython version, so a changed source or a jython
+ * update simply misses the cache.
+ */
+public class PythonCodeCache {
+
+    private static final String SUFFIX = ".class";
+
+    /**
+     * directory the compiled code is stored in, null if the cache is disabled
+     */
+    private final File dir;
+
+    private final Logger logger;
+
+    /**
+     * @param dir directory to store compiled code in, null to disable caching
+     * @param logger logger to report cache problems to
+     */
+    public PythonCodeCache(File dir, Logger logger) {
+        this.dir = dir;
+        this.logger = logger;
+    }
+
+    /**
+     * Compile python source, reusing the cached bytecode if the source did not change.
+     * @param name module name the code is compiled for
+     * @param source python source
+     * @param filename file name shown in tracebacks
+     * @return compiled code
+     */
+    public PyCode compile(String name, byte[] source, String filename) {
+        if (dir == null) {
+            return BytecodeLoader.makeCode(name + "$py", compileSource(name, source, filename), filename);
+        }
+
+        File cached = new File(dir, key(name, source) + SUFFIX);
+        if (cached.isFile()) {
+            try {
+                PyCode code = BytecodeLoader.makeCode(name + "$py", Files.readAllBytes(cached.toPath()), filename);
+                // the modification time tells prune when the entry was used last
+                cached.setLastModified(System.currentTimeMillis());
+                return code;
+            } catch (Throwable t) {
+                logger.log(Level.WARNING, "[PPLoader] dropping unusable cached code for " + filename, t);
+                cached.delete();
+            }
+        }
+
+        byte[] bytecode = compileSource(name, source, filename);
+        try {
+            store(cached, bytecode);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "[PPLoader] could not cache compiled code for " + filename, e);
+        }
+        return BytecodeLoader.makeCode(name + "$py", bytecode, filename);
+    }
+
+    /**
+     * Remove cached code which was not used for the given time. Code of lazy plugins and of
+     * modules imported later on is not used on every start, so age decides instead of this run.
+     * @param maxAge milliseconds since the last use after which an entry is removed
+     */
+    public void prune(long maxAge) {
+        if (dir == null) {
+            return;
+        }
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long oldest = System.currentTimeMillis() - maxAge;
+        for (File file : files) {
+            if (file.getName().endsWith(SUFFIX) && file.lastModified() < oldest) {
+                file.delete();
+            }
+        }
+    }
+
+    private static byte[] compileSource(String name, byte[] source, String filename) {
+        return imp.compileSource(name, new ByteArrayInputStream(source), filename);
+    }
+
+    private void store(File cached, byte[] bytecode) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("could not create " + dir);
+        }
+        File tmp = File.createTempFile(cached.getName(), ".tmp", dir);
+        try {
+            Files.write(tmp.toPath(), bytecode);
+            Files.move(tmp.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    private static String key(String name, byte[] source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((Version.PY_VERSION + ":" + imp.getAPIVersion() + ":" + name + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            digest.update(source);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
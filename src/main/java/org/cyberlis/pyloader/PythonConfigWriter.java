@@ -0,0 +1,146 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.pyloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Write-behind saving of python plugin configs. saveConfig only marks the config
+ * dirty, all saves within the delay are coalesced into one. The config is turned
+ * into YAML on the server thread, because plugins change it there, and written
+ * to a temporary file and renamed over the config file on a background thread.
+ */
+public class PythonConfigWriter {
+
+    private final Plugin owner;
+    private final long delayTicks;
+    private final Set<PythonPlugin> dirty = ConcurrentHashMap.newKeySet();
+    private final ExecutorService io = Executors.newSingleThreadExecutor((runnable) -> {
+        Thread thread = new Thread(runnable, "PPLoader-config-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param owner plugin to schedule the saves with
+     * @param delayMillis time to collect changes before a config is saved
+     */
+    public PythonConfigWriter(Plugin owner, long delayMillis) {
+        this.owner = owner;
+        this.delayTicks = Math.max(1, delayMillis / 50);
+    }
+
+    /**
+     * Save the config of a plugin after the delay, unless a save is pending already.
+     *
+     * @param plugin plugin whose config changed
+     */
+    public void markDirty(PythonPlugin plugin) {
+        if (!dirty.add(plugin)) {
+            return;
+        }
+        if (owner.isEnabled()) {
+            owner.getServer().getScheduler().runTaskLater(owner, () -> flush(plugin, false), delayTicks);
+        } else {
+            flush(plugin, true);
+        }
+    }
+
+    /**
+     * Save the config of a plugin now if it is dirty and wait until it is written, used when disabling it.
+     *
+     * @param plugin plugin to save the config of
+     */
+    public void flush(PythonPlugin plugin) {
+        flush(plugin, true);
+    }
+
+    /**
+     * Save all dirty configs and stop the background thread.
+     */
+    public void shutdown() {
+        for (PythonPlugin plugin : new ArrayList<PythonPlugin>(dirty)) {
+            flush(plugin, true);
+        }
+        io.shutdown();
+        try {
+            io.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flush(PythonPlugin plugin, boolean wait) {
+        if (!dirty.remove(plugin)) {
+            return;
+        }
+        File file = plugin.getConfigFile();
+        String yaml = plugin.getConfig().saveToString();
+        // writes of one file stay in order because there is only one io thread
+        try {
+            if (wait) {
+                io.submit(() -> write(plugin, file, yaml)).get();
+            } else {
+                io.execute(() -> write(plugin, file, yaml));
+            }
+        } catch (RejectedExecutionException e) {
+            write(plugin, file, yaml);
+        } catch (ExecutionException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not save config to " + file, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(PythonPlugin plugin, File file, String yaml) {
+        try {
+            Path target = file.toPath();
+            Files.createDirectories(target.getParent());
+            Path temp = Files.createTempFile(target.getParent(), "." + file.getName(), ".tmp");
+            try {
+                Files.write(temp, yaml.getBytes(StandardCharsets.UTF_8));
+                try {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException | RuntimeException ex) {
+            // on the io thread nobody else would see the failure
+            plugin.getLogger().log(Level.SEVERE, "Could not save config to " + file, ex);
+        }
+    }
+}
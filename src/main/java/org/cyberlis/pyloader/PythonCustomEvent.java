@@ -16,20 +16,77 @@ along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
 */
 package org.cyberlis.pyloader;
 
+import java.util.Arrays;
+import java.util.Comparator;
+
 import org.bukkit.event.Event;
 import org.bukkit.event.HandlerList;
+import org.bukkit.plugin.RegisteredListener;
 
 /**
- * Superclass for custom events in python
+ * Superclass for custom events in python. Every subclass has its own handler list,
+ * so firing an event only calls the listeners of that event type. Python
+ * listeners for a subclass are registered in its list by the python plugin loader,
+ * a handler receives the events of exactly the type it was registered for.
+ * <p>
+ * Listeners bukkit registers itself, like those of PythonCustomEvent or those
+ * registered with PluginManager.registerEvent, end up in the list of
+ * PythonCustomEvent, which is called for the events of every subclass.
  */
 public abstract class PythonCustomEvent extends Event {
     private static final HandlerList handlers = new HandlerList();
 
+    private static final ClassValue<HandlerList> typeHandlers = new ClassValue<HandlerList>() {
+        @Override
+        protected HandlerList computeValue(Class<?> type) {
+            return new TypeHandlerList();
+        }
+    };
+
     public HandlerList getHandlers() {
-        return handlers;
+        return getHandlerList(getClass());
     }
 
+    /**
+     * @return handler list bukkit registers listeners of PythonCustomEvent and its subclasses in, called
+     *         for the events of every subclass
+     */
     public static HandlerList getHandlerList() {
         return handlers;
     }
+
+    /**
+     * @param type python event type
+     * @return handler list of the event type
+     */
+    public static HandlerList getHandlerList(Class<? extends PythonCustomEvent> type) {
+        return type == PythonCustomEvent.class ? handlers : typeHandlers.get(type);
+    }
+
+    /**
+     * Handler list of a subclass, which returns its own listeners together with those of
+     * PythonCustomEvent, ordered by priority.
+     */
+    private static final class TypeHandlerList extends HandlerList {
+        private volatile RegisteredListener[][] merged = new RegisteredListener[3][];
+
+        @Override
+        public RegisteredListener[] getRegisteredListeners() {
+            RegisteredListener[] own = super.getRegisteredListeners();
+            RegisteredListener[] shared = handlers.getRegisteredListeners();
+            if (shared.length == 0) {
+                return own;
+            }
+            // bukkit returns the same arrays until a list changes, so the merge is only redone then
+            RegisteredListener[][] last = merged;
+            if (last[0] == own && last[1] == shared) {
+                return last[2];
+            }
+            RegisteredListener[] result = Arrays.copyOf(own, own.length + shared.length);
+            System.arraycopy(shared, 0, result, own.length, shared.length);
+            Arrays.sort(result, Comparator.comparing(RegisteredListener::getPriority));
+            merged = new RegisteredListener[][] { own, shared, result };
+            return result;
+        }
+    }
 }
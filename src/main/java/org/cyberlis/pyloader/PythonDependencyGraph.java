@@ -0,0 +1,124 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.pyloader;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.bukkit.plugin.PluginDescriptionFile;
+
+/**
+ * Orders python plugins by depend, softdepend and loadbefore into layers. The
+ * plugins of one layer do not depend on each other and may be loaded at the same time.
+ */
+public class PythonDependencyGraph {
+
+    private final Map<String, File> files = new LinkedHashMap<String, File>();
+    private final Map<String, PluginDescriptionFile> descriptions = new HashMap<String, PluginDescriptionFile>();
+    private final Logger logger;
+
+    /**
+     * @param logger logger to report ambiguous plugins and cycles to
+     */
+    public PythonDependencyGraph(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * @param file plugin file
+     * @param description description read from the plugin file
+     */
+    public void add(File file, PluginDescriptionFile description) {
+        String name = description.getName();
+        if (files.containsKey(name)) {
+            logger.warning("[PPLoader] Ambiguous plugin name \"" + name + "\" for " + file + ", already defined by "
+                    + files.get(name) + " - ignoring it");
+            return;
+        }
+        files.put(name, file);
+        descriptions.put(name, description);
+    }
+
+    /**
+     * @return plugin files in layers, each layer only depends on the layers before it
+     */
+    public List<List<File>> getLayers() {
+        Map<String, Set<String>> before = new HashMap<String, Set<String>>();
+        for (String name : files.keySet()) {
+            Set<String> required = new HashSet<String>();
+            PluginDescriptionFile description = descriptions.get(name);
+            addKnown(required, description.getDepend());
+            addKnown(required, description.getSoftDepend());
+            before.put(name, required);
+        }
+        for (String name : files.keySet()) {
+            for (String other : nonNull(descriptions.get(name).getLoadBefore())) {
+                if (before.containsKey(other)) {
+                    before.get(other).add(name);
+                }
+            }
+        }
+
+        List<List<File>> layers = new ArrayList<List<File>>();
+        Set<String> remaining = new HashSet<String>(files.keySet());
+        while (!remaining.isEmpty()) {
+            List<String> layer = new ArrayList<String>();
+            for (String name : files.keySet()) {
+                if (remaining.contains(name) && Collections.disjoint(before.get(name), remaining)) {
+                    layer.add(name);
+                }
+            }
+            if (layer.isEmpty()) {
+                // cycle, fall back to loading the rest one after another
+                logger.warning("[PPLoader] Circular dependencies between " + remaining + ", loading them sequentially");
+                for (String name : files.keySet()) {
+                    if (remaining.contains(name)) {
+                        layers.add(Collections.singletonList(files.get(name)));
+                    }
+                }
+                break;
+            }
+            List<File> layerFiles = new ArrayList<File>();
+            for (String name : layer) {
+                layerFiles.add(files.get(name));
+            }
+            layers.add(layerFiles);
+            remaining.removeAll(layer);
+        }
+        return layers;
+    }
+
+    private void addKnown(Set<String> required, List<String> names) {
+        for (String name : nonNull(names)) {
+            if (files.containsKey(name)) {
+                required.add(name);
+            }
+        }
+    }
+
+    private static List<String> nonNull(List<String> names) {
+        return names != null ? names : Collections.<String>emptyList();
+    }
+}
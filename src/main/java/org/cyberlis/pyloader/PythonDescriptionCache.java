@@ -0,0 +1,224 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.pyloader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.InvalidDescriptionException;
+import org.bukkit.plugin.PluginDescriptionFile;
+
+/**
+ * Index of the plugin.yml of every python plugin file, keyed by path, size and
+ * modification time and kept on disk between starts. A plugin which did not change
+ * is described without opening its file, and its plugin.yml is parsed only once
+ * per start, no matter how often the description is needed.
+ */
+public class PythonDescriptionCache {
+
+    private static final int FORMAT = 1;
+
+    /**
+     * file the index is stored in, null if it is only kept in memory
+     */
+    private final File file;
+
+    private final Logger logger;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * plugin files looked up since startup, everything else is dropped by {@link #save()}
+     */
+    private final Set<String> used = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean changed = false;
+
+    /**
+     * @param file file to store the index in, null to keep it in memory only
+     * @param logger logger to report index problems to
+     */
+    public PythonDescriptionCache(File file, Logger logger) {
+        this.file = file;
+        this.logger = logger;
+        if (file != null && file.isFile()) {
+            load();
+        }
+    }
+
+    /**
+     * @param plugin plugin file
+     * @return description of the plugin if plugin.yml did not change since it was stored, otherwise null
+     * @throws InvalidDescriptionException thrown if the stored plugin.yml is invalid
+     */
+    public PluginDescriptionFile get(File plugin) throws InvalidDescriptionException {
+        String path = plugin.getAbsolutePath();
+        Entry entry = entries.get(path);
+        File stamped = stampedFile(plugin);
+        if (entry == null || entry.size != stamped.length() || entry.lastModified != stamped.lastModified()) {
+            return null;
+        }
+        used.add(path);
+        return entry.description();
+    }
+
+    /**
+     * @param plugin plugin file
+     * @param yaml content of its plugin.yml
+     * @return description parsed from yaml
+     * @throws InvalidDescriptionException thrown if yaml is not a valid plugin.yml
+     */
+    public PluginDescriptionFile put(File plugin, byte[] yaml) throws InvalidDescriptionException {
+        File stamped = stampedFile(plugin);
+        Entry entry = new Entry(stamped.length(), stamped.lastModified(), yaml);
+        PluginDescriptionFile description = entry.description();
+        String path = plugin.getAbsolutePath();
+        entries.put(path, entry);
+        used.add(path);
+        changed = true;
+        return description;
+    }
+
+    /**
+     * @param plugin plugin file
+     * @return plugin.yml of the plugin as configuration, for options bukkit does not know like "lazy"
+     */
+    public ConfigurationSection getOptions(File plugin) {
+        Entry entry = entries.get(plugin.getAbsolutePath());
+        return entry == null ? new YamlConfiguration() : entry.options();
+    }
+
+    /**
+     * Store the index, without the plugin files which were not looked up since startup.
+     */
+    public synchronized void save() {
+        if (entries.keySet().retainAll(used)) {
+            changed = true;
+        }
+        if (file == null || !changed) {
+            return;
+        }
+        try {
+            File dir = file.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("could not create " + dir);
+            }
+            File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                    out.writeInt(FORMAT);
+                    Map<String, Entry> snapshot = Map.copyOf(entries);
+                    out.writeInt(snapshot.size());
+                    for (Map.Entry<String, Entry> entry : snapshot.entrySet()) {
+                        out.writeUTF(entry.getKey());
+                        out.writeLong(entry.getValue().size);
+                        out.writeLong(entry.getValue().lastModified);
+                        out.writeInt(entry.getValue().yaml.length);
+                        out.write(entry.getValue().yaml);
+                    }
+                }
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                tmp.delete();
+            }
+            changed = false;
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "[PPLoader] could not store the plugin index " + file, e);
+        }
+    }
+
+    private void load() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FORMAT) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                byte[] yaml = new byte[in.readInt()];
+                in.readFully(yaml);
+                entries.put(path, new Entry(size, lastModified, yaml));
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "[PPLoader] dropping unreadable plugin index " + file, e);
+            entries.clear();
+        }
+    }
+
+    /**
+     * @param plugin plugin file
+     * @return file whose size and modification time tell whether plugin.yml changed
+     */
+    private static File stampedFile(File plugin) {
+        // the modification time of a directory does not change when a file inside is edited
+        return plugin.isDirectory() ? new File(plugin, "plugin.yml") : plugin;
+    }
+
+    private static final class Entry {
+        private final long size;
+        private final long lastModified;
+        private final byte[] yaml;
+        private PluginDescriptionFile description;
+        private YamlConfiguration options;
+
+        Entry(long size, long lastModified, byte[] yaml) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.yaml = yaml;
+        }
+
+        synchronized PluginDescriptionFile description() throws InvalidDescriptionException {
+            if (description == null) {
+                description = new PluginDescriptionFile(
+                        new InputStreamReader(new ByteArrayInputStream(yaml), StandardCharsets.UTF_8));
+            }
+            return description;
+        }
+
+        synchronized YamlConfiguration options() {
+            if (options == null) {
+                String text = new String(yaml, StandardCharsets.UTF_8);
+                // only parse plugin.yml a second time if it can contain a python specific option
+                options = text.contains("lazy") ? YamlConfiguration.loadConfiguration(new StringReader(text))
+                        : new YamlConfiguration();
+            }
+            return options;
+        }
+    }
+}
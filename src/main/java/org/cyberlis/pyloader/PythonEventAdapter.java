@@ -0,0 +1,192 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.pyloader;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bukkit.event.Event;
+import org.python.core.Py;
+import org.python.core.PyObject;
+import org.python.core.PyString;
+
+/**
+ * Python view of an event whose getters are called through method handles prepared
+ * once per event class, instead of jython's reflective method lookup and overload
+ * resolution. Getters are available as attributes ({@code event.player}) and as
+ * methods ({@code event.getPlayer()}), everything else is passed on to the regular
+ * jython proxy of the event, which is only created when needed.
+ */
+public class PythonEventAdapter extends PyObject {
+
+    /**
+     * getters by event class, kept with the class so events of unloaded plugins do not stay loaded
+     */
+    private static final ClassValue<Accessors> accessors = new ClassValue<Accessors>() {
+        @Override
+        protected Accessors computeValue(Class<?> type) {
+            return new Accessors(type);
+        }
+    };
+
+    private final Event event;
+    private final Accessors getters;
+    private PyObject proxy;
+
+    /**
+     * @param event event to adapt
+     */
+    public PythonEventAdapter(Event event) {
+        this.event = event;
+        this.getters = prepare(event.getClass());
+    }
+
+    /**
+     * Prepare the getters of an event class ahead of the first event, done when a handler is registered.
+     *
+     * @param type event class
+     * @return getters of the class
+     */
+    static Accessors prepare(Class<?> type) {
+        return accessors.get(type);
+    }
+
+    @Override
+    public PyObject __findattr_ex__(String name) {
+        MethodHandle getter = getters.properties.get(name);
+        if (getter != null) {
+            return get(getter);
+        }
+        getter = getters.methods.get(name);
+        if (getter != null) {
+            return new Getter(this, getter);
+        }
+        return proxy().__findattr_ex__(name);
+    }
+
+    @Override
+    public void __setattr__(String name, PyObject value) {
+        proxy().__setattr__(name, value);
+    }
+
+    @Override
+    public Object __tojava__(Class<?> c) {
+        if (c.isInstance(event)) {
+            return event;
+        }
+        return proxy().__tojava__(c);
+    }
+
+    @Override
+    public PyString __repr__() {
+        return proxy().__repr__();
+    }
+
+    @Override
+    public PyString __str__() {
+        return proxy().__str__();
+    }
+
+    @Override
+    public int hashCode() {
+        return event.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof PythonEventAdapter && ((PythonEventAdapter) other).event == event;
+    }
+
+    private PyObject get(MethodHandle getter) {
+        try {
+            return Py.java2py((Object) getter.invokeExact(event));
+        } catch (Throwable t) {
+            throw Py.JavaError(t);
+        }
+    }
+
+    private PyObject proxy() {
+        if (proxy == null) {
+            proxy = Py.java2py(event);
+        }
+        return proxy;
+    }
+
+    /**
+     * Public getters of an event class as (Event)Object method handles, by attribute and by method name.
+     */
+    static final class Accessors {
+        final Map<String, MethodHandle> properties = new HashMap<String, MethodHandle>();
+        final Map<String, MethodHandle> methods = new HashMap<String, MethodHandle>();
+
+        Accessors(Class<?> type) {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            MethodType erased = MethodType.methodType(Object.class, Event.class);
+            for (Method method : type.getMethods()) {
+                String name = method.getName();
+                int prefix = name.startsWith("get") ? 3 : name.startsWith("is") ? 2 : 0;
+                if (prefix == 0 || name.length() == prefix || !Character.isUpperCase(name.charAt(prefix))
+                        || method.getParameterCount() != 0 || method.getReturnType() == void.class
+                        || Modifier.isStatic(method.getModifiers()) || name.equals("getHandlers") || hasOverloads(type, name)) {
+                    continue;
+                }
+                try {
+                    MethodHandle getter = lookup.unreflect(method).asType(erased);
+                    methods.put(name, getter);
+                    properties.put(Character.toLowerCase(name.charAt(prefix)) + name.substring(prefix + 1), getter);
+                } catch (IllegalAccessException e) {
+                    // declared by a non public class, left to jython
+                }
+            }
+        }
+
+        /**
+         * @return whether the class has a method of this name with parameters, those are left to jython
+         */
+        private static boolean hasOverloads(Class<?> type, String name) {
+            for (Method method : type.getMethods()) {
+                if (method.getName().equals(name) && method.getParameterCount() != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Result of looking up a getter by its method name, calls it when called.
+     */
+    private static final class Getter extends PyObject {
+        private final PythonEventAdapter adapter;
+        private final MethodHandle getter;
+
+        Getter(PythonEventAdapter adapter, MethodHandle getter) {
+            this.adapter = adapter;
+            this.getter = getter;
+        }
+
+        @Override
+        public PyObject __call__() {
+            return adapter.get(getter);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.pyloader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.block.BlockEvent;
+import org.bukkit.event.entity.EntityEvent;
+import org.bukkit.event.player.PlayerEvent;
+import org.bukkit.plugin.Plugin;
+import org.python.core.Py;
+import org.python.core.PyList;
+import org.python.core.PyObject;
+
+/**
+ * Buffer of the events for a handler registered with batch=True. Firing an event
+ * only appends it to an array, once per tick the buffered events are passed to
+ * the handler in one call as a list. With coalesce=True only the latest event of
+ * every player, entity or block is passed.
+ */
+class PythonEventBatch {
+
+    private static final int INITIAL_SIZE = 64;
+
+    private final boolean coalesce;
+
+    private Event[] events = new Event[INITIAL_SIZE];
+    private Event[] spare = new Event[INITIAL_SIZE];
+    private int size;
+
+    /**
+     * @param coalesce whether to pass only the latest event of every player, entity or block
+     */
+    PythonEventBatch(boolean coalesce) {
+        this.coalesce = coalesce;
+    }
+
+    /**
+     * @param event event to pass with the next flush
+     */
+    synchronized void add(Event event) {
+        if (size == events.length) {
+            events = Arrays.copyOf(events, size * 2);
+        }
+        events[size++] = event;
+    }
+
+    /**
+     * Pass the buffered events to the handler, called once per tick on the server thread.
+     *
+     * @param handler handler the events are buffered for
+     * @param plugin plugin the handler belongs to
+     */
+    void flush(PythonEventHandler handler, Plugin plugin) {
+        Event[] batch;
+        int count;
+        // swap the buffers, so events fired by the handler itself go into the next batch
+        synchronized (this) {
+            if (size == 0) {
+                return;
+            }
+            batch = events;
+            count = size;
+            events = spare.length >= INITIAL_SIZE ? spare : new Event[INITIAL_SIZE];
+            spare = batch;
+            size = 0;
+        }
+        List<Event> delivered = coalesce ? coalesce(batch, count) : Arrays.asList(batch).subList(0, count);
+        PyObject[] pyEvents = new PyObject[delivered.size()];
+        for (int i = 0; i < pyEvents.length; i++) {
+            pyEvents[i] = handler.adapt ? new PythonEventAdapter(delivered.get(i)) : Py.java2py(delivered.get(i));
+        }
+        Arrays.fill(batch, 0, count, null);
+
+        long start = System.nanoTime();
+        try {
+            handler.handler.__call__(new PyList(pyEvents));
+            handler.stats.record(System.nanoTime() - start, false);
+        } catch (Throwable t) {
+            handler.stats.record(System.nanoTime() - start, true);
+            plugin.getLogger().log(Level.SEVERE, "Could not pass " + pyEvents.length + " batched events "
+                    + handler.type.getSimpleName() + " to " + plugin.getDescription().getFullName(), t);
+        }
+    }
+
+    /**
+     * @return number of events waiting for the next flush
+     */
+    synchronized int getPending() {
+        return size;
+    }
+
+    /**
+     * @return latest event for every player, entity or block, in the order they first fired
+     */
+    private static List<Event> coalesce(Event[] batch, int count) {
+        Map<Object, Event> latest = new LinkedHashMap<Object, Event>();
+        for (int i = 0; i < count; i++) {
+            Object key = subject(batch[i]);
+            latest.put(key != null ? key : batch[i], batch[i]);
+        }
+        return new ArrayList<Event>(latest.values());
+    }
+
+    /**
+     * @return player, entity or block the event is about, null if unknown
+     */
+    private static Object subject(Event event) {
+        if (event instanceof PlayerEvent) {
+            return ((PlayerEvent) event).getPlayer();
+        }
+        if (event instanceof EntityEvent) {
+            return ((EntityEvent) event).getEntity();
+        }
+        if (event instanceof BlockEvent) {
+            return ((BlockEvent) event).getBlock();
+        }
+        return null;
+    }
+}
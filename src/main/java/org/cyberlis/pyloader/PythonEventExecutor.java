@@ -0,0 +1,58 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.pyloader;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Executor for all python handlers of a listener with the same event type and
+ * priority, so bukkit only has to call one registered listener for them.
+ */
+class PythonEventExecutor implements EventExecutor {
+
+    private final Class<? extends Event> type;
+    private final PythonEventHandler[] handlers;
+    private final Plugin plugin;
+    private final PythonAsyncDispatcher asyncDispatcher;
+
+    /**
+     * @param type event type the handlers are listening for
+     * @param handlers handlers to call, in order
+     * @param plugin plugin the handlers belong to
+     * @param asyncDispatcher dispatcher for the handlers registered with async=True
+     */
+    PythonEventExecutor(Class<? extends Event> type, PythonEventHandler[] handlers, Plugin plugin,
+            PythonAsyncDispatcher asyncDispatcher) {
+        this.type = type;
+        this.handlers = handlers;
+        this.plugin = plugin;
+        this.asyncDispatcher = asyncDispatcher;
+    }
+
+    @Override
+    public void execute(Listener listener, Event event) throws EventException {
+        // subclasses without their own handler list share the list of their parent
+        if (!type.isInstance(event)) {
+            return;
+        }
+        ((PythonListener) listener).fireEvent(event, handlers, plugin, asyncDispatcher);
+    }
+}
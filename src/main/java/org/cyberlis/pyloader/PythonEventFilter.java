@@ -0,0 +1,220 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.pyloader;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.event.Event;
+import org.bukkit.event.block.BlockEvent;
+import org.bukkit.event.entity.EntityEvent;
+import org.bukkit.event.player.PlayerEvent;
+import org.bukkit.event.world.WorldEvent;
+import org.bukkit.permissions.Permissible;
+import org.python.core.Py;
+
+/**
+ * Filters of a python event handler, given as options of the PythonEventHandler
+ * decorator. They are compiled into one java predicate when the handler is created
+ * and checked before the event is converted, so events the handler does not want
+ * never reach the interpreter.
+ * <ul>
+ * <li>world - name or list of names of the world the player, entity or block is in</li>
+ * <li>entity_type - EntityType or list of them, of the player or entity</li>
+ * <li>material - Material or list of them, of the block</li>
+ * <li>permission - permission the player or entity needs</li>
+ * <li>block_changed - True to only pass move events leaving the block they started in</li>
+ * </ul>
+ */
+final class PythonEventFilter {
+
+    /**
+     * filters and the other options of the decorator, anything else is most likely a typo
+     */
+    private static final List<String> OPTIONS = Arrays.asList("world", "entity_type", "material", "permission",
+            "block_changed", "async", "ignoreCancelled", "batch", "coalesce", "name");
+
+    private PythonEventFilter() {
+    }
+
+    /**
+     * @param type event type the handler is listening for
+     * @param options options of the PythonEventHandler decorator
+     * @return predicate the event has to match, null if there are no filters
+     * @throws IllegalArgumentException if an option is unknown, a filter is not supported by the event
+     *         type or has an invalid value
+     */
+    static Predicate<Event> compile(Class<? extends Event> type, Map<?, ?> options) {
+        for (Object key : options.keySet()) {
+            if (!OPTIONS.contains(key.toString())) {
+                throw new IllegalArgumentException("Unknown option " + key + " for handler of " + type.getSimpleName()
+                        + ", known are " + OPTIONS);
+            }
+        }
+        Predicate<Event> filter = null;
+
+        Object world = options.get("world");
+        if (world != null) {
+            Function<Event, World> worldOf = worldOf(type);
+            require(worldOf, "world", type);
+            Set<String> names = new HashSet<String>();
+            for (Object name : values(world)) {
+                names.add(name instanceof World ? ((World) name).getName() : name.toString());
+            }
+            filter = and(filter, (event) -> {
+                World w = worldOf.apply(event);
+                return w != null && names.contains(w.getName());
+            });
+        }
+
+        Object entityType = options.get("entity_type");
+        if (entityType != null) {
+            Function<Event, Entity> entityOf = entityOf(type);
+            require(entityOf, "entity_type", type);
+            Set<EntityType> types = EnumSet.noneOf(EntityType.class);
+            for (Object value : values(entityType)) {
+                types.add(value instanceof EntityType ? (EntityType) value
+                        : EntityType.valueOf(value.toString().toUpperCase(Locale.ROOT)));
+            }
+            filter = and(filter, (event) -> {
+                Entity entity = entityOf.apply(event);
+                return entity != null && types.contains(entity.getType());
+            });
+        }
+
+        Object material = options.get("material");
+        if (material != null) {
+            require(BlockEvent.class.isAssignableFrom(type) ? type : null, "material", type);
+            Set<Material> materials = EnumSet.noneOf(Material.class);
+            for (Object value : values(material)) {
+                Material m = value instanceof Material ? (Material) value : Material.matchMaterial(value.toString());
+                if (m == null) {
+                    throw new IllegalArgumentException("Unknown material " + value);
+                }
+                materials.add(m);
+            }
+            filter = and(filter, (event) -> materials.contains(((BlockEvent) event).getBlock().getType()));
+        }
+
+        Object permission = options.get("permission");
+        if (permission != null) {
+            Function<Event, Entity> entityOf = entityOf(type);
+            require(entityOf, "permission", type);
+            String node = permission.toString();
+            filter = and(filter, (event) -> {
+                Entity entity = entityOf.apply(event);
+                return entity instanceof Permissible && ((Permissible) entity).hasPermission(node);
+            });
+        }
+
+        if (Boolean.TRUE.equals(options.get("block_changed"))) {
+            MethodHandle from = locationGetter(type, "getFrom");
+            MethodHandle to = locationGetter(type, "getTo");
+            require(from != null && to != null ? type : null, "block_changed", type);
+            filter = and(filter, (event) -> {
+                try {
+                    return blockChanged((Location) from.invokeExact(event), (Location) to.invokeExact(event));
+                } catch (Throwable t) {
+                    throw Py.JavaError(t);
+                }
+            });
+        }
+
+        return filter;
+    }
+
+    private static boolean blockChanged(Location from, Location to) {
+        return from == null || to == null || from.getBlockX() != to.getBlockX() || from.getBlockY() != to.getBlockY()
+                || from.getBlockZ() != to.getBlockZ() || from.getWorld() != to.getWorld();
+    }
+
+    /**
+     * @return function returning the world of an event of the given type, null if it has none
+     */
+    private static Function<Event, World> worldOf(Class<? extends Event> type) {
+        if (WorldEvent.class.isAssignableFrom(type)) {
+            return (event) -> ((WorldEvent) event).getWorld();
+        }
+        if (BlockEvent.class.isAssignableFrom(type)) {
+            return (event) -> ((BlockEvent) event).getBlock().getWorld();
+        }
+        Function<Event, Entity> entityOf = entityOf(type);
+        if (entityOf != null) {
+            return (event) -> {
+                Entity entity = entityOf.apply(event);
+                return entity != null ? entity.getWorld() : null;
+            };
+        }
+        return null;
+    }
+
+    /**
+     * @return function returning the player or entity of an event of the given type, null if it has none
+     */
+    private static Function<Event, Entity> entityOf(Class<? extends Event> type) {
+        if (PlayerEvent.class.isAssignableFrom(type)) {
+            return (event) -> ((PlayerEvent) event).getPlayer();
+        }
+        if (EntityEvent.class.isAssignableFrom(type)) {
+            return (event) -> ((EntityEvent) event).getEntity();
+        }
+        return null;
+    }
+
+    /**
+     * @return handle of a public Location getter of the event type as (Event)Location, null if it has none
+     */
+    private static MethodHandle locationGetter(Class<? extends Event> type, String name) {
+        try {
+            return MethodHandles.publicLookup().findVirtual(type, name, MethodType.methodType(Location.class))
+                    .asType(MethodType.methodType(Location.class, Event.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    private static void require(Object supported, String filter, Class<? extends Event> type) {
+        if (supported == null) {
+            throw new IllegalArgumentException("Event " + type.getSimpleName() + " can not be filtered by " + filter);
+        }
+    }
+
+    private static Collection<?> values(Object value) {
+        return value instanceof Collection ? (Collection<?>) value : Collections.singleton(value);
+    }
+
+    private static Predicate<Event> and(Predicate<Event> first, Predicate<Event> second) {
+        return first == null ? second : first.and(second);
+    }
+}
@@ -16,6 +16,10 @@ along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
 */
 package org.cyberlis.pyloader;
 
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Predicate;
+
 import org.bukkit.event.Event;
 import org.bukkit.event.EventPriority;
 import org.python.core.PyObject;
@@ -40,6 +44,41 @@ public class PythonEventHandler {
      */
     final EventPriority priority;
 
+    /**
+     * Whether the handler is called with a snapshot of the event on a virtual thread
+     */
+    final boolean async;
+
+    /**
+     * Name of the {@link DynamicPythonEvent} this handler is listening for, null for other event types
+     */
+    final String eventName;
+
+    /**
+     * Whether the handler is skipped for events which were cancelled already
+     */
+    final boolean ignoreCancelled;
+
+    /**
+     * Filters the event has to match to be passed to the handler, null if there are none
+     */
+    final Predicate<Event> filter;
+
+    /**
+     * Buffer of the events passed to this handler once per tick, null if the handler is called for every event
+     */
+    final PythonEventBatch batch;
+
+    /**
+     * Whether the handler gets the event as {@link PythonEventAdapter}, set when the listener is registered
+     */
+    boolean adapt;
+
+    /**
+     * Invocations and latencies of this handler
+     */
+    final PythonHandlerStats stats;
+
     /**
      * Whether we've registered yet
      */
@@ -51,6 +90,17 @@ public class PythonEventHandler {
      * @param priority Priority to register the handler at
      */
     public PythonEventHandler(PyObject handler, Class<? extends Event> type, EventPriority priority) {
+        this(handler, type, priority, Collections.emptyMap());
+    }
+
+    /**
+     * @param handler Python function to call
+     * @param type Event type this handler is listening for
+     * @param priority Priority to register the handler at
+     * @param options options passed to the PythonEventHandler decorator, like async, ignoreCancelled, batch or
+     *            the filters of {@link PythonEventFilter}
+     */
+    public PythonEventHandler(PyObject handler, Class<? extends Event> type, EventPriority priority, Map<?, ?> options) {
         if(handler.isCallable())
         {
             this.handler = handler;
@@ -59,5 +109,31 @@ public class PythonEventHandler {
         }
         this.type = type;
         this.priority = priority;
+        this.async = Boolean.TRUE.equals(options.get("async"));
+        Object subscribed = options.get("name");
+        if (type == DynamicPythonEvent.class) {
+            if (subscribed == null) {
+                throw new IllegalArgumentException("Event handler for DynamicPythonEvent needs a name");
+            }
+            this.eventName = subscribed.toString();
+        } else if (subscribed != null) {
+            throw new IllegalArgumentException("Event name is only used for DynamicPythonEvent");
+        } else {
+            this.eventName = null;
+        }
+        this.ignoreCancelled = Boolean.TRUE.equals(options.get("ignoreCancelled"));
+        this.filter = PythonEventFilter.compile(type, options);
+        if (Boolean.TRUE.equals(options.get("batch"))) {
+            if (async) {
+                throw new IllegalArgumentException("Event handler can not be both async and batch");
+            }
+            this.batch = new PythonEventBatch(Boolean.TRUE.equals(options.get("coalesce")));
+        } else {
+            this.batch = null;
+        }
+        PyObject name = handler.__findattr__("__name__");
+        this.stats = new PythonHandlerStats(name != null ? name.toString() : handler.toString(),
+                eventName != null ? type.getSimpleName() + "(" + eventName + ")" : type.getSimpleName(),
+                priority.name(), async);
     }
 }
@@ -0,0 +1,160 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.pyloader;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.bukkit.Location;
+import org.bukkit.event.Event;
+import org.python.core.Py;
+import org.python.core.PyObject;
+import org.python.core.PyString;
+
+/**
+ * Read only copy of the getter values of an event, taken on the thread which fired
+ * the event and handed to async python handlers. The values are available both
+ * as attributes ({@code event.player}) and as getters ({@code event.getPlayer()}).
+ * Collections and locations are copied, other objects are the live bukkit objects.
+ */
+public class PythonEventSnapshot extends PyObject {
+
+    /**
+     * getters by event class as (Event)Object method handles, kept with the class so
+     * events of unloaded plugins do not stay loaded
+     */
+    private static final ClassValue<Map<String, MethodHandle>> getters = new ClassValue<Map<String, MethodHandle>>() {
+        @Override
+        protected Map<String, MethodHandle> computeValue(Class<?> type) {
+            return findGetters(type);
+        }
+    };
+
+    private final Class<? extends Event> type;
+
+    /**
+     * attribute name to value, getters that failed are missing
+     */
+    private final Map<String, Object> values = new HashMap<String, Object>();
+
+    /**
+     * @param event event to copy
+     */
+    public PythonEventSnapshot(Event event) {
+        this.type = event.getClass();
+        for (Map.Entry<String, MethodHandle> getter : getters.get(type).entrySet()) {
+            try {
+                values.put(getter.getKey(), copy((Object) getter.getValue().invokeExact(event)));
+            } catch (Throwable t) {
+                // leave out values whose getter does not work for this event
+            }
+        }
+    }
+
+    /**
+     * @return class of the event this snapshot was taken from
+     */
+    public Class<? extends Event> getEventClass() {
+        return type;
+    }
+
+    @Override
+    public PyObject __findattr_ex__(String name) {
+        if (values.containsKey(name)) {
+            return Py.java2py(values.get(name));
+        }
+        String property = propertyName(name);
+        if (property != null && values.containsKey(property)) {
+            return new Getter(values.get(property));
+        }
+        return super.__findattr_ex__(name);
+    }
+
+    @Override
+    public PyString __repr__() {
+        return new PyString("<snapshot of " + type.getName() + " " + values.keySet() + ">");
+    }
+
+    private static Object copy(Object value) {
+        if (value instanceof Location) {
+            return ((Location) value).clone();
+        }
+        if (value instanceof Collection) {
+            return Collections.unmodifiableList(new ArrayList<Object>((Collection<?>) value));
+        }
+        if (value instanceof Map) {
+            return Collections.unmodifiableMap(new LinkedHashMap<Object, Object>((Map<?, ?>) value));
+        }
+        return value;
+    }
+
+    /**
+     * @param name method name
+     * @return attribute name for a getter name like getPlayer or isCancelled, null for other names
+     */
+    private static String propertyName(String name) {
+        int prefix = name.startsWith("get") ? 3 : name.startsWith("is") ? 2 : 0;
+        if (prefix == 0 || name.length() == prefix || !Character.isUpperCase(name.charAt(prefix))) {
+            return null;
+        }
+        return Character.toLowerCase(name.charAt(prefix)) + name.substring(prefix + 1);
+    }
+
+    private static Map<String, MethodHandle> findGetters(Class<?> type) {
+        Map<String, MethodHandle> result = new HashMap<String, MethodHandle>();
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        MethodType erased = MethodType.methodType(Object.class, Event.class);
+        for (Method method : type.getMethods()) {
+            String property = propertyName(method.getName());
+            if (property == null || method.getParameterCount() != 0 || method.getReturnType() == void.class
+                    || Modifier.isStatic(method.getModifiers()) || method.getName().equals("getHandlers")) {
+                continue;
+            }
+            try {
+                result.put(property, lookup.unreflect(method).asType(erased));
+            } catch (IllegalAccessException e) {
+                // not accessible from here, e.g. declared by a non public class
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Callable returned for getter names, returns the copied value.
+     */
+    private static final class Getter extends PyObject {
+        private final Object value;
+
+        Getter(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public PyObject __call__() {
+            return Py.java2py(value);
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.pyloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Reloads python plugins in two stages: the new plugin is loaded and compiled on
+ * a worker thread while the old one keeps running, then the old one is unloaded
+ * and the new one enabled in a single task on the server thread. Optionally
+ * watches the plugin directory and reloads plugin files shortly after they changed.
+ */
+public class PythonHotReloader {
+
+    private final PythonLoader ppLoader;
+    private final long delayNanos;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor((runnable) -> {
+        Thread thread = new Thread(runnable, "PPLoader-reload");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private WatchService watcher;
+    private Thread watchThread;
+
+    /**
+     * plugins loaded on the worker which were not switched in or discarded yet
+     */
+    private final Set<Plugin> prepared = Collections.synchronizedSet(new HashSet<Plugin>());
+
+    /**
+     * changed plugin files to the time of their last change, reloaded once they are quiet for the delay
+     */
+    private final Map<File, Long> changed = new HashMap<File, Long>();
+
+    /**
+     * @param ppLoader PPLoader plugin to schedule the switch with
+     * @param delayMillis time a watched plugin file has to stay unchanged before it is reloaded
+     */
+    public PythonHotReloader(PythonLoader ppLoader, long delayMillis) {
+        this.ppLoader = ppLoader;
+        this.delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+    }
+
+    /**
+     * Reload a plugin file, the plugin of that file or the plugin with the given name is replaced.
+     *
+     * @param file plugin file to load
+     * @param replaces name of the plugin to replace, null for the plugin loaded from file
+     */
+    public void reload(File file, String replaces) {
+        if (ppLoader.getPythonPluginLoader().isSharedRuntime()) {
+            // the modules of the running version are in the shared sys.modules until it is unloaded, a
+            // version loaded before would import those, so it is loaded in the swap on the server thread
+            ppLoader.getServer().getScheduler().runTask(ppLoader, () -> swap(file, replaces, null, 0));
+            return;
+        }
+        worker.execute(() -> {
+            long start = System.nanoTime();
+            Plugin plugin;
+            try {
+                plugin = ppLoader.getPythonPluginLoader().loadPlugin(file);
+            } catch (Throwable t) {
+                ppLoader.getServer().getLogger().log(Level.SEVERE,
+                        "[PPLoader] Could not reload \"" + file.getName() + "\", the running version is kept", t);
+                return;
+            }
+            long preparedNanos = System.nanoTime() - start;
+            prepared.add(plugin);
+            try {
+                ppLoader.getServer().getScheduler().runTask(ppLoader, () -> swap(file, replaces, plugin, preparedNanos));
+            } catch (RuntimeException e) {
+                // PPLoader was disabled meanwhile
+                discard(plugin);
+            }
+        });
+    }
+
+    /**
+     * @param plugin plugin loaded on the worker, null to load it here after the old one is unloaded
+     */
+    private void swap(File file, String replaces, Plugin plugin, long preparedNanos) {
+        if (plugin != null && !prepared.remove(plugin)) {
+            // discarded by shutdown
+            return;
+        }
+        long start = System.nanoTime();
+        for (Plugin running : ppLoader.pmw.getPlugins()) {
+            if (running instanceof PythonPlugin && (replaces != null
+                    ? running.getDescription().getName().equalsIgnoreCase(replaces)
+                    : ((PythonPlugin) running).getFile().getAbsoluteFile().equals(file.getAbsoluteFile()))) {
+                String name = running.getDescription().getName();
+                Throwable failure = null;
+                try {
+                    ppLoader.unloadPlugin(name);
+                } catch (Throwable t) {
+                    failure = t;
+                }
+                if (failure != null || ppLoader.getServer().getPluginManager().getPlugin(name) != null) {
+                    ppLoader.getServer().getLogger().log(Level.SEVERE, "[PPLoader] Could not unload "
+                            + running.getDescription().getFullName() + ", the running version is kept", failure);
+                    release(plugin);
+                    return;
+                }
+            }
+        }
+        PythonPluginLoader loader = ppLoader.getPythonPluginLoader();
+        loader.evictPlugin(file);
+        if (plugin == null) {
+            try {
+                plugin = loader.loadPlugin(file);
+            } catch (Throwable t) {
+                ppLoader.getServer().getLogger().log(Level.SEVERE,
+                        "[PPLoader] Could not reload \"" + file.getName() + "\", the old version is unloaded", t);
+                return;
+            }
+        }
+        try {
+            ppLoader.pmw.addPlugin(plugin);
+        } catch (IllegalStateException e) {
+            ppLoader.getServer().getLogger().log(Level.SEVERE,
+                    "[PPLoader] Could not register the reloaded \"" + file.getName() + "\"", e);
+            release(plugin);
+            return;
+        }
+        ppLoader.pmw.enablePlugin(plugin);
+        for (Player player : ppLoader.getServer().getOnlinePlayers()) {
+            player.updateCommands();
+        }
+        ppLoader.getServer().getLogger().info(String.format("[PPLoader] Reloaded %s, prepared in %d ms, switched in %d ms",
+                plugin.getDescription().getFullName(), TimeUnit.NANOSECONDS.toMillis(preparedNanos),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    }
+
+    /**
+     * Start watching a directory for changed python plugin files.
+     *
+     * @param dir plugin directory
+     * @throws IOException thrown if the directory can not be watched
+     */
+    public synchronized void watch(File dir) throws IOException {
+        if (watcher != null) {
+            return;
+        }
+        watcher = FileSystems.getDefault().newWatchService();
+        Path root = dir.toPath();
+        register(root);
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory() && isPluginFile(file)) {
+                    registerTree(file.toPath());
+                }
+            }
+        }
+        watchThread = new Thread(() -> run(root), "PPLoader-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+        ppLoader.getServer().getLogger().info("[PPLoader] Watching \"" + dir.getAbsolutePath() + "\" for changed python plugins");
+    }
+
+    /**
+     * Stop watching and reloading.
+     */
+    public synchronized void shutdown() {
+        if (watchThread != null) {
+            watchThread.interrupt();
+        }
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                // closing anyway
+            }
+        }
+        worker.shutdownNow();
+        // tasks of a disabled plugin do not run anymore, so prepared plugins would never be switched in
+        synchronized (prepared) {
+            for (Plugin plugin : prepared) {
+                release(plugin);
+            }
+            prepared.clear();
+        }
+    }
+
+    /**
+     * Drop a prepared plugin which is not going to be switched in, unless shutdown did already.
+     */
+    private void discard(Plugin plugin) {
+        if (prepared.remove(plugin)) {
+            release(plugin);
+        }
+    }
+
+    private void release(Plugin plugin) {
+        if (plugin instanceof PythonPlugin) {
+            // closes its data file and drops its importer
+            ppLoader.getPythonPluginLoader().releasePlugin((PythonPlugin) plugin, null);
+        }
+    }
+
+    private void run(Path root) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watcher.poll(250, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    Path dir = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            continue;
+                        }
+                        Path path = dir.resolve((Path) event.context());
+                        File plugin = pluginFile(root, path);
+                        if (plugin == null) {
+                            continue;
+                        }
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                            registerTree(path);
+                        }
+                        changed.put(plugin, System.nanoTime());
+                    }
+                    key.reset();
+                }
+
+                Iterator<Map.Entry<File, Long>> it = changed.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<File, Long> entry = it.next();
+                    if (System.nanoTime() - entry.getValue() >= delayNanos) {
+                        it.remove();
+                        if (entry.getKey().exists()) {
+                            reload(entry.getKey(), null);
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // shutdown
+        } catch (Exception e) {
+            ppLoader.getServer().getLogger().log(Level.SEVERE, "[PPLoader] Stopped watching for changed python plugins", e);
+        }
+    }
+
+    /**
+     * @param root watched plugin directory
+     * @param path changed path
+     * @return python plugin file or directory containing path, null if path does not belong to one
+     */
+    private static File pluginFile(Path root, Path path) {
+        if (!path.startsWith(root) || path.equals(root)) {
+            return null;
+        }
+        File file = root.resolve(root.relativize(path).getName(0)).toFile();
+        return isPluginFile(file) ? file : null;
+    }
+
+    private static boolean isPluginFile(File file) {
+        for (Pattern filter : PythonPluginLoader.fileFilters) {
+            if (filter.matcher(file.getName()).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void register(Path dir) throws IOException {
+        dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+    private void registerTree(Path dir) {
+        try (Stream<Path> dirs = Files.walk(dir)) {
+            for (Path sub : (Iterable<Path>) dirs.filter(Files::isDirectory)::iterator) {
+                register(sub);
+            }
+        } catch (IOException e) {
+            ppLoader.getServer().getLogger().log(Level.WARNING, "[PPLoader] Could not watch \"" + dir + "\"", e);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.pyloader;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bukkit.event.HandlerList;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+import org.python.core.PySystemState;
+
+/**
+ * Watches unloaded python plugins with phantom references instead of forcing a
+ * garbage collection. If a plugin, its interpreter or its system state was not
+ * collected after the grace period and an old generation collection since the
+ * unload, a warning lists these parts and the known roots still holding the plugin.
+ */
+public class PythonLeakTracker {
+
+    private final Plugin owner;
+    private final long graceNanos;
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+    private final List<Unloaded> unloaded = new ArrayList<Unloaded>();
+    private final Thread thread;
+
+    /**
+     * collectors which collect the old generation, where unloaded plugins usually live
+     */
+    private final List<GarbageCollectorMXBean> oldCollectors = new ArrayList<GarbageCollectorMXBean>();
+
+    /**
+     * @param owner plugin to run the root checks for
+     * @param graceSeconds time after unloading until a plugin which is still reachable is reported
+     */
+    public PythonLeakTracker(Plugin owner, long graceSeconds) {
+        this.owner = owner;
+        this.graceNanos = TimeUnit.SECONDS.toNanos(graceSeconds);
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        for (GarbageCollectorMXBean collector : collectors) {
+            String name = collector.getName();
+            // young collections and the pause counters of concurrent collectors do not look at the old generation
+            if (!name.contains("Young") && !name.contains("Scavenge") && !name.contains("Minor")
+                    && !name.equals("Copy") && !name.equals("ParNew") && !name.contains("Pauses")) {
+                oldCollectors.add(collector);
+            }
+        }
+        if (oldCollectors.isEmpty()) {
+            oldCollectors.addAll(collectors);
+        }
+        this.thread = new Thread(this::run, "PPLoader-leak-tracker");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Start watching an unloaded plugin.
+     *
+     * @param plugin plugin which was unloaded
+     * @param state system state of the plugin, null if it is shared with other plugins
+     */
+    public void track(PythonPlugin plugin, PySystemState state) {
+        Unloaded entry = new Unloaded(plugin, state, oldCollections());
+        synchronized (unloaded) {
+            unloaded.add(entry);
+        }
+    }
+
+    /**
+     * Stop watching, plugins which were not reported yet are not reported anymore.
+     */
+    public void shutdown() {
+        thread.interrupt();
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Reference<?> collected = queue.remove(1000);
+                long collections = oldCollections();
+                synchronized (unloaded) {
+                    Iterator<Unloaded> it = unloaded.iterator();
+                    while (it.hasNext()) {
+                        Unloaded entry = it.next();
+                        if (collected != null) {
+                            entry.parts.remove(collected);
+                        }
+                        if (entry.parts.isEmpty()) {
+                            it.remove();
+                        } else if (System.nanoTime() - entry.unloadNanos > graceNanos
+                                && collections > entry.unloadCollections) {
+                            // without a collection of the old generation since the unload nothing says it leaked
+                            it.remove();
+                            report(entry);
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // shutdown
+        }
+    }
+
+    /**
+     * @return number of old generation collections since the start of the server
+     */
+    private long oldCollections() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : oldCollectors) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private void report(Unloaded entry) {
+        List<String> parts = new ArrayList<String>();
+        for (Part part : entry.parts) {
+            parts.add(part.name);
+        }
+        String message = String.format("[PPLoader] %s was not collected %d s after unloading: %s",
+                entry.name, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - entry.unloadNanos), parts);
+        if (!owner.isEnabled()) {
+            owner.getLogger().warning(message);
+            return;
+        }
+        // the server only allows looking at listeners and tasks from its own thread
+        owner.getServer().getScheduler().runTask(owner, () -> {
+            PythonPlugin plugin = entry.plugin.get();
+            List<String> roots = plugin == null ? new ArrayList<String>() : roots(plugin);
+            owner.getLogger().warning(message + (roots.isEmpty()
+                    ? ", held by something outside the server, e.g. another plugin or a python thread"
+                    : ", held by " + String.join(", ", roots)));
+        });
+    }
+
+    /**
+     * @param plugin plugin which is still reachable
+     * @return descriptions of the known server roots still referencing the plugin
+     */
+    private List<String> roots(PythonPlugin plugin) {
+        List<String> roots = new ArrayList<String>();
+        for (Plugin loaded : owner.getServer().getPluginManager().getPlugins()) {
+            if (loaded == plugin) {
+                roots.add("the plugin manager");
+            }
+        }
+        int listeners = HandlerList.getRegisteredListeners(plugin).size();
+        if (listeners > 0) {
+            roots.add(listeners + " event listeners");
+        }
+        int tasks = 0;
+        for (BukkitTask task : owner.getServer().getScheduler().getPendingTasks()) {
+            if (task.getOwner() == plugin) {
+                tasks++;
+            }
+        }
+        if (tasks > 0) {
+            roots.add(tasks + " scheduled tasks");
+        }
+        int services = owner.getServer().getServicesManager().getRegistrations(plugin).size();
+        if (services > 0) {
+            roots.add(services + " services");
+        }
+        int channels = owner.getServer().getMessenger().getIncomingChannels(plugin).size()
+                + owner.getServer().getMessenger().getOutgoingChannels(plugin).size();
+        if (channels > 0) {
+            roots.add(channels + " plugin channels");
+        }
+        return roots;
+    }
+
+    /**
+     * Phantom reference to one part of an unloaded plugin.
+     */
+    private static final class Part extends PhantomReference<Object> {
+        private final String name;
+
+        Part(Object referent, String name, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.name = name;
+        }
+    }
+
+    private final class Unloaded {
+        private final String name;
+        private final long unloadNanos = System.nanoTime();
+        private final long unloadCollections;
+        private final List<Part> parts = new ArrayList<Part>();
+
+        /**
+         * weak reference to look up roots while the plugin is still reachable
+         */
+        private final WeakReference<PythonPlugin> plugin;
+
+        Unloaded(PythonPlugin plugin, PySystemState state, long unloadCollections) {
+            this.unloadCollections = unloadCollections;
+            this.name = plugin.getDescription().getFullName();
+            this.plugin = new WeakReference<PythonPlugin>(plugin);
+            parts.add(new Part(plugin, "plugin", queue));
+            if (plugin.interp != null) {
+                parts.add(new Part(plugin.interp, "interpreter", queue));
+            }
+            if (state != null) {
+                parts.add(new Part(state, "system state", queue));
+            }
+        }
+    }
+}
@@ -16,13 +16,19 @@ along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
 */
 package org.cyberlis.pyloader;
 
+import java.lang.ref.WeakReference;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
 
+import org.bukkit.event.Cancellable;
 import org.bukkit.event.Event;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.plugin.Plugin;
 import org.python.core.Py;
 import org.python.core.PyObject;
 
@@ -37,19 +43,107 @@ public class PythonListener implements Listener {
      */
     HashMap<Class<? extends Event>, Set<PythonEventHandler>> handlers = new HashMap<Class<? extends Event>, Set<PythonEventHandler>>();
 
+    /**
+     * last event converted to python, reused by all handlers of this listener which
+     * receive the same event. Both are only weakly held, so the last event of a
+     * quiet listener and everything it references can be collected.
+     */
+    private volatile ConvertedEvent lastConverted;
+
+    /**
+     * Call several handlers for the same event. An exception of one handler is
+     * logged and does not keep the other handlers from being called.
+     *
+     * @param e event to pass to the handlers
+     * @param handlers handlers to call, in order
+     * @param plugin plugin the handlers belong to
+     * @param asyncDispatcher dispatcher for the handlers registered with async=True
+     */
+    void fireEvent(Event e, PythonEventHandler[] handlers, Plugin plugin, PythonAsyncDispatcher asyncDispatcher) {
+        PyObject pyEvent = null;
+        PythonEventSnapshot snapshot = null;
+        for (PythonEventHandler handler : handlers) {
+            // checked for every handler, an earlier one of the same dispatch may have cancelled the event
+            if (handler.ignoreCancelled && e instanceof Cancellable && ((Cancellable) e).isCancelled()) {
+                continue;
+            }
+            if (handler.filter != null && !handler.filter.test(e)) {
+                continue;
+            }
+            if (handler.batch != null) {
+                handler.batch.add(e);
+                continue;
+            }
+            if (handler.async) {
+                if (snapshot == null) {
+                    snapshot = new PythonEventSnapshot(e);
+                }
+                asyncDispatcher.submit(handler, snapshot, plugin);
+                continue;
+            }
+            if (pyEvent == null) {
+                pyEvent = toPython(e, handler.adapt);
+            }
+            long start = System.nanoTime();
+            try {
+                handler.handler.__call__(pyEvent);
+                handler.stats.record(System.nanoTime() - start, false);
+            } catch (Throwable t) {
+                handler.stats.record(System.nanoTime() - start, true);
+                plugin.getLogger().log(Level.SEVERE, "Could not pass event " + e.getEventName() + " to "
+                        + plugin.getDescription().getFullName(), t);
+            }
+        }
+    }
 
-    void fireEvent(Event e, PythonEventHandler handler) {
-        handler.handler.__call__(Py.java2py(e));
+    /**
+     * @param e event to convert
+     * @param adapt whether to wrap the event in a {@link PythonEventAdapter}
+     * @return python object for the event, shared by all handlers of the current dispatch
+     */
+    PyObject toPython(Event e, boolean adapt) {
+        ConvertedEvent last = lastConverted;
+        if (last != null && last.event.get() == e) {
+            PyObject pyEvent = last.get();
+            if (pyEvent != null) {
+                return pyEvent;
+            }
+        }
+        PyObject pyEvent = adapt ? new PythonEventAdapter(e) : Py.java2py(e);
+        lastConverted = new ConvertedEvent(e, pyEvent);
+        return pyEvent;
     }
 
     public  void addHandler(PyObject handler, Class<? extends Event> type, EventPriority priority) {
+        addHandler(handler, type, priority, Collections.emptyMap());
+    }
+
+    /**
+     * @param handler python function to call
+     * @param type event type to listen for
+     * @param priority priority to register the handler at
+     * @param options options of the PythonEventHandler decorator, see {@link PythonEventHandler}
+     */
+    public  void addHandler(PyObject handler, Class<? extends Event> type, EventPriority priority, Map<?, ?> options) {
         Set<PythonEventHandler> set = this.handlers.get(type);
-        PythonEventHandler pythonHandler = new PythonEventHandler(handler, type, priority);
+        PythonEventHandler pythonHandler = new PythonEventHandler(handler, type, priority, options);
         if(set == null) {
-            set = new HashSet<PythonEventHandler>();
+            set = new LinkedHashSet<PythonEventHandler>();
             handlers.put(type, set);
         }
 
         set.add(pythonHandler);
     }
+
+    /**
+     * Weak reference to the python object of an event, with a weak reference to the event.
+     */
+    private static final class ConvertedEvent extends WeakReference<PyObject> {
+        final WeakReference<Event> event;
+
+        ConvertedEvent(Event event, PyObject pyEvent) {
+            super(pyEvent);
+            this.event = new WeakReference<Event>(event);
+        }
+    }
 }
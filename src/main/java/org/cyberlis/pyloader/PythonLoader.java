@@ -17,13 +17,23 @@ along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
 package org.cyberlis.pyloader;
 
 import java.io.File;
-import java.lang.reflect.Field;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.net.URISyntaxException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.logging.Level;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -33,7 +43,9 @@ import org.bukkit.command.ConsoleCommandSender;
 import org.bukkit.command.PluginCommand;
 import org.bukkit.command.SimpleCommandMap;
 import org.bukkit.entity.Player;
+import org.bukkit.plugin.InvalidDescriptionException;
 import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginDescriptionFile;
 import org.bukkit.plugin.PluginLoader;
 import org.bukkit.plugin.PluginManager;
 import org.bukkit.plugin.SimplePluginManager;
@@ -51,16 +63,129 @@ import org.python.jline.internal.Log;
 public class PythonLoader extends JavaPlugin {
 
     protected PluginManagerWrapper pmw;
-    public void onDisable() {}
+    private PythonCodeCache codeCache;
+    private PythonPluginLoader pythonPluginLoader;
+    private PythonAsyncDispatcher asyncDispatcher;
+    private PythonLeakTracker leakTracker;
+    private PythonDescriptionCache descriptionCache;
+    private PythonHotReloader hotReloader;
+    private PythonConfigWriter configWriter;
+    private PythonProxyCache proxyCache;
+    private boolean configWriterChecked;
+    public void onDisable() {
+        if (hotReloader != null) {
+            hotReloader.shutdown();
+        }
+        if (configWriter != null) {
+            configWriter.shutdown();
+        }
+        if (proxyCache != null) {
+            proxyCache.uninstall();
+        }
+        if (descriptionCache != null) {
+            descriptionCache.save();
+        }
+        if (asyncDispatcher != null) {
+            asyncDispatcher.shutdown();
+        }
+        if (leakTracker != null) {
+            leakTracker.shutdown();
+        }
+    }
    
     public void onEnable() {
         getServer().getLogger().info("[PPLoader] Enable plugins");
 
+        if (proxyCache != null) {
+            getServer().getPluginManager().registerEvents(proxyCache, this);
+        }
+
         for (Plugin p : pmw.getPlugins()) {
             if (p instanceof PythonPlugin && !p.isEnabled()) {
                 pmw.enablePlugin(p);
             }
         }
+        getCodeCache().prune(TimeUnit.DAYS.toMillis(getConfig().getLong("bytecode-cache-max-age", 30)));
+
+        if (getConfig().getBoolean("hot-reload.enabled", false)) {
+            try {
+                getHotReloader().watch(getFile().getParentFile());
+            } catch (IOException e) {
+                getServer().getLogger().log(Level.WARNING, "[PPLoader] Could not watch for changed python plugins", e);
+            }
+        }
+    }
+
+    /**
+     * @return reloader which prepares reloaded python plugins off the server thread
+     */
+    public synchronized PythonHotReloader getHotReloader() {
+        if (hotReloader == null) {
+            hotReloader = new PythonHotReloader(this, getConfig().getLong("hot-reload.delay", 1000));
+        }
+        return hotReloader;
+    }
+
+    /**
+     * @return writer which saves python plugin configs in the background, null if they are saved right away
+     */
+    public synchronized PythonConfigWriter getConfigWriter() {
+        if (!configWriterChecked) {
+            long delay = getConfig().getLong("config-save-delay", 0);
+            configWriter = delay > 0 ? new PythonConfigWriter(this, delay) : null;
+            configWriterChecked = true;
+        }
+        return configWriter;
+    }
+
+    /**
+     * @return cache for the compiled code of python plugins
+     */
+    public synchronized PythonCodeCache getCodeCache() {
+        if (codeCache == null) {
+            File dir = getConfig().getBoolean("bytecode-cache", true) ? new File(getDataFolder(), "cache") : null;
+            codeCache = new PythonCodeCache(dir, getServer().getLogger());
+        }
+        return codeCache;
+    }
+
+    /**
+     * @return index of the plugin.yml of all python plugin files
+     */
+    public synchronized PythonDescriptionCache getDescriptionCache() {
+        if (descriptionCache == null) {
+            File file = getConfig().getBoolean("plugin-index", true) ? new File(getDataFolder(), "plugins.idx") : null;
+            descriptionCache = new PythonDescriptionCache(file, getServer().getLogger());
+        }
+        return descriptionCache;
+    }
+
+    /**
+     * @return dispatcher for python handlers registered with async=True
+     */
+    public synchronized PythonAsyncDispatcher getAsyncDispatcher() {
+        if (asyncDispatcher == null) {
+            PythonAsyncDispatcher.Overflow overflow = PythonAsyncDispatcher.Overflow.DROP;
+            String configured = getConfig().getString("async-handlers.overflow", "drop");
+            try {
+                overflow = PythonAsyncDispatcher.Overflow.valueOf(configured.toUpperCase().replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                getServer().getLogger().warning("[PPLoader] Unknown async-handlers.overflow \"" + configured + "\", using drop");
+            }
+            asyncDispatcher = new PythonAsyncDispatcher(getConfig().getInt("async-handlers.queue-size", 1024), overflow);
+        }
+        return asyncDispatcher;
+    }
+
+    /**
+     * @return tracker for unloaded python plugins which are not garbage collected, null if disabled
+     */
+    public synchronized PythonLeakTracker getLeakTracker() {
+        long grace = getConfig().getLong("leak-detection.grace-period", 60);
+        if (leakTracker == null && grace > 0) {
+            leakTracker = new PythonLeakTracker(this, grace);
+        }
+        return leakTracker;
     }
 
     /**
@@ -69,6 +194,7 @@ public class PythonLoader extends JavaPlugin {
     @Override
     public void onLoad() {
         getServer().getLogger().info("[PPLoader] Start plugin loader");
+        saveDefaultConfig();
         try {
             getServer().getLogger().info("[PPLoader] loaded from "
                     + new File(getClass().getProtectionDomain().getCodeSource().getLocation().toURI()).getPath());
@@ -82,6 +208,10 @@ public class PythonLoader extends JavaPlugin {
             return;
         }
 
+        if (getConfig().getBoolean("proxy-cache", true)) {
+            proxyCache = PythonProxyCache.install();
+        }
+
         try {
             Class.forName("io.papermc.paper.plugin.manager.PaperPluginManagerImpl");
             pmw = new PaperPluginManagerWrapper();
@@ -111,28 +241,123 @@ public class PythonLoader extends JavaPlugin {
                 directory = directory.getParentFile();
             }
             AtomicInteger foundPy = new AtomicInteger(0);
-            Consumer<File> process = (file) -> {
-                try {
-                    getServer().getLogger().info("[PPLoader] found Python plugin \"" + file.getName() + "\" - try to load bukkit/spigot plugin");
-                    Plugin plugin = pmw.loadPlugin(file);
-                    /* if (plugin != null) {
-                        pmw.enablePlugin(plugin);
-                    }*/
-                    foundPy.incrementAndGet();
-                } catch (UnknownDependencyException e) {
-                    e.printStackTrace();
+            if (getConfig().getBoolean("parallel-loading", false)) {
+                List<File> files = new ArrayList<File>();
+                loadDir(this.getFile().getParentFile(), files::add);
+                if (files.isEmpty()) {
+                    loadDir(this.getFile().getParentFile().getParentFile(), files::add);
+                }
+                foundPy.set(loadParallel(files));
+            } else {
+                Consumer<File> process = (file) -> {
+                    try {
+                        getServer().getLogger().info("[PPLoader] found Python plugin \"" + file.getName() + "\" - try to load bukkit/spigot plugin");
+                        Plugin plugin = pmw.loadPlugin(file);
+                        /* if (plugin != null) {
+                            pmw.enablePlugin(plugin);
+                        }*/
+                        foundPy.incrementAndGet();
+                    } catch (UnknownDependencyException e) {
+                        e.printStackTrace();
+                    }
+                };
+                loadDir(this.getFile().getParentFile(), process);
+                if (foundPy.get() == 0) {
+                    loadDir(this.getFile().getParentFile().getParentFile(), process);
                 }
-            };
-            loadDir(this.getFile().getParentFile(), process);
-            if (foundPy.get() == 0) {
-                loadDir(this.getFile().getParentFile().getParentFile(), process);
             }
+            getDescriptionCache().save();
             if (pmw != null && pmw.getPlugins() != null) {
                 getServer().getLogger().info("[PPLoader] " + pmw.getPlugins().length + " plugins, where " + foundPy.get() + " are Python Plugins");
             }
         }
     }
 
+    /**
+     * Load python plugins in dependency order. All plugins of a layer of the
+     * dependency graph are loaded at the same time on a worker pool, only the
+     * registration with the plugin manager is done on the calling thread.
+     *
+     * @param files plugin files to load
+     * @return number of loaded plugins
+     */
+    private int loadParallel(List<File> files) {
+        PythonPluginLoader loader = getPythonPluginLoader();
+        PythonDependencyGraph graph = new PythonDependencyGraph(getServer().getLogger());
+        for (File file : files) {
+            try {
+                PluginDescriptionFile description = loader.getPluginDescription(file);
+                if (description != null) {
+                    graph.add(file, description);
+                }
+            } catch (InvalidDescriptionException e) {
+                getServer().getLogger().log(Level.SEVERE, "[PPLoader] Could not load \"" + file.getName() + "\"", e);
+            }
+        }
+
+        int threads = getConfig().getInt("loader-threads", 0);
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        AtomicInteger threadCount = new AtomicInteger(0);
+        ExecutorService pool = Executors.newFixedThreadPool(threads, (runnable) -> {
+            Thread thread = new Thread(runnable, "PPLoader-loader-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        int loaded = 0;
+        try {
+            for (List<File> layer : graph.getLayers()) {
+                List<Future<Plugin>> results = new ArrayList<Future<Plugin>>();
+                for (File file : layer) {
+                    getServer().getLogger().info("[PPLoader] found Python plugin \"" + file.getName() + "\" - try to load bukkit/spigot plugin");
+                    results.add(pool.submit(() -> loader.loadPlugin(file)));
+                }
+                for (int i = 0; i < layer.size(); i++) {
+                    Plugin plugin;
+                    try {
+                        plugin = results.get(i).get();
+                    } catch (ExecutionException e) {
+                        getServer().getLogger().log(Level.SEVERE, "[PPLoader] Could not load \"" + layer.get(i).getName() + "\"", e.getCause());
+                        continue;
+                    }
+                    try {
+                        pmw.addPlugin(plugin);
+                        loaded++;
+                    } catch (IllegalStateException e) {
+                        getServer().getLogger().log(Level.SEVERE, "[PPLoader] Could not register \"" + layer.get(i).getName() + "\"", e);
+                        if (plugin instanceof PythonPlugin) {
+                            loader.releasePlugin((PythonPlugin) plugin, null);
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+        return loaded;
+    }
+
+    /**
+     * @return the python plugin loader registered with the plugin manager
+     */
+    PythonPluginLoader getPythonPluginLoader() {
+        Map<Pattern, PluginLoader> fileAssociations = pmw.getFileAssociations(null);
+        if (fileAssociations != null) {
+            PluginLoader loader = fileAssociations.get(PythonPluginLoader.fileFilters[0]);
+            if (loader instanceof PythonPluginLoader) {
+                return (PythonPluginLoader) loader;
+            }
+        }
+        if (pythonPluginLoader == null) {
+            pythonPluginLoader = new PythonPluginLoader(getServer());
+        }
+        return pythonPluginLoader;
+    }
+
     private void loadDir(File directory, Consumer<File> process) {
         if (directory == null) {
             return;
@@ -144,6 +369,7 @@ public class PythonLoader extends JavaPlugin {
                 Matcher match = filter.matcher(file.getName());
                 if (match.find()) {
                     process.accept(file);
+                    break;
                 }
             }
         }
@@ -156,7 +382,8 @@ public class PythonLoader extends JavaPlugin {
             }
             String action = args[0];
 
-            if ((!action.equalsIgnoreCase("load")) && (!action.equalsIgnoreCase("unload")) && (!action.equalsIgnoreCase("reload"))) {
+            if ((!action.equalsIgnoreCase("load")) && (!action.equalsIgnoreCase("unload")) && (!action.equalsIgnoreCase("reload"))
+                    && (!action.equalsIgnoreCase("stats"))) {
                 getServer().getLogger().severe("Invalid action specified.");
                 return false;
             }
@@ -166,6 +393,11 @@ public class PythonLoader extends JavaPlugin {
                 return true;
             }
 
+            if (action.equalsIgnoreCase("stats")) {
+                showStats(sender, args.length > 1 ? args[1] : null);
+                return true;
+            }
+
             if (args.length == 1) {
                 getServer().getLogger().severe("You must specify plugin name or filename");
                 return true;
@@ -194,31 +426,82 @@ public class PythonLoader extends JavaPlugin {
         return false;
     }
 
-    private boolean unloadPlugin(String pluginName)
+    /**
+     * Show the event handler statistics of the python plugins, slowest handlers first.
+     * @param sender sender to show the statistics to
+     * @param pluginName plugin to show, null for all python plugins
+     */
+    private void showStats(CommandSender sender, String pluginName) {
+        List<Map.Entry<String, PythonHandlerStats>> stats = new ArrayList<Map.Entry<String, PythonHandlerStats>>();
+        for (Plugin plugin : pmw.getPlugins()) {
+            if (!(plugin instanceof PythonPlugin)
+                    || (pluginName != null && !plugin.getDescription().getName().equalsIgnoreCase(pluginName))) {
+                continue;
+            }
+            PythonPlugin pyPlugin = (PythonPlugin) plugin;
+            PythonResourceCache resources = pyPlugin.resourceCache;
+            sender.sendMessage(String.format("%s: loaded in %d ms%s", pyPlugin.getDescription().getFullName(),
+                    pyPlugin.loadNanos / 1000000, resources == null ? "" : String.format(
+                            ", resource cache %d hits, %d misses, %d KiB", resources.getHits(),
+                            resources.getMisses(), resources.getBytes() / 1024)));
+            for (PythonEventHandler handler : pyPlugin.active().eventHandlers) {
+                stats.add(new AbstractMap.SimpleEntry<String, PythonHandlerStats>(pyPlugin.getDescription().getName(), handler.stats));
+            }
+        }
+        stats.sort((a, b) -> Long.compare(b.getValue().getTotalNanos(), a.getValue().getTotalNanos()));
+        for (Map.Entry<String, PythonHandlerStats> entry : stats) {
+            PythonHandlerStats handler = entry.getValue();
+            sender.sendMessage(String.format("%s %s(%s %s%s): %d calls, %d failed, p50 %.1f us, p99 %.1f us, max %.1f us, total %.1f ms",
+                    entry.getKey(), handler.getHandler(), handler.getEvent(), handler.getPriority(),
+                    handler.isAsync() ? " async" : "", handler.getInvocations(), handler.getFailures(),
+                    handler.getP50Nanos() / 1000.0, handler.getP99Nanos() / 1000.0, handler.getMaxNanos() / 1000.0,
+                    handler.getTotalNanos() / 1000000.0));
+        }
+        PythonAsyncDispatcher async = getAsyncDispatcher();
+        sender.sendMessage(String.format("async handlers: %d pending, %d submitted, %d completed, %d failed, %d dropped, %d run by caller",
+                async.getPending(), async.getSubmitted(), async.getCompleted(), async.getFailed(), async.getDropped(),
+                async.getCallerRuns()));
+        if (proxyCache != null) {
+            sender.sendMessage(String.format("proxy cache: %d objects, %d hits, %d misses",
+                    proxyCache.getSize(), proxyCache.getHits(), proxyCache.getMisses()));
+        }
+    }
+
+    /**
+     * Private fields of SimplePluginManager used by {@link #unloadPlugin(String)}, resolved on first use.
+     */
+    private static final class SimplePluginManagerFields {
+        static final VarHandle PLUGINS;
+        static final VarHandle LOOKUP_NAMES;
+        static final VarHandle COMMAND_MAP;
+
+        static {
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(SimplePluginManager.class, MethodHandles.lookup());
+                // the declared field types differ between bukkit versions, so look the fields up by name only
+                PLUGINS = lookup.unreflectVarHandle(SimplePluginManager.class.getDeclaredField("plugins"));
+                LOOKUP_NAMES = lookup.unreflectVarHandle(SimplePluginManager.class.getDeclaredField("lookupNames"));
+                COMMAND_MAP = lookup.unreflectVarHandle(SimplePluginManager.class.getDeclaredField("commandMap"));
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Unsupported bukkit version, SimplePluginManager is missing plugins, lookupNames or commandMap", e);
+            }
+        }
+    }
+
+    boolean unloadPlugin(String pluginName)
       throws Exception {
         PluginManager manager = getServer().getPluginManager();
         SimplePluginManager spmanager = (SimplePluginManager)manager;
 
         if (spmanager != null) {
-            Field pluginsField = spmanager.getClass().getDeclaredField("plugins");
-            pluginsField.setAccessible(true);
-            List plugins = (List)pluginsField.get(spmanager);
-
-            Field lookupNamesField = spmanager.getClass().getDeclaredField("lookupNames");
-            lookupNamesField.setAccessible(true);
-            Map lookupNames = (Map)lookupNamesField.get(spmanager);
-
-            Field commandMapField = spmanager.getClass().getDeclaredField("commandMap");
-            commandMapField.setAccessible(true);
-            SimpleCommandMap commandMap = (SimpleCommandMap)commandMapField.get(spmanager);
+            List plugins = (List) SimplePluginManagerFields.PLUGINS.get(spmanager);
+            Map lookupNames = (Map) SimplePluginManagerFields.LOOKUP_NAMES.get(spmanager);
+            SimpleCommandMap commandMap = (SimpleCommandMap) SimplePluginManagerFields.COMMAND_MAP.get(spmanager);
 
-            Field knownCommandsField = null;
             Map knownCommands = null;
 
             if (commandMap != null) {
-                knownCommandsField = commandMap.getClass().getDeclaredField("knownCommands");
-                knownCommandsField.setAccessible(true);
-                knownCommands = (Map)knownCommandsField.get(commandMap);
+                knownCommands = commandMap.getKnownCommands();
             }
             Iterator it;
             for (Plugin plugin: manager.getPlugins()) {
@@ -233,6 +516,10 @@ public class PythonLoader extends JavaPlugin {
                         lookupNames.remove(pluginName);
                     }
 
+                    if (plugin instanceof PythonPlugin && plugin.getPluginLoader() instanceof PythonPluginLoader) {
+                        ((PythonPluginLoader) plugin.getPluginLoader()).releasePlugin((PythonPlugin) plugin, getLeakTracker());
+                    }
+
                     if (commandMap != null) {
                         for (it = knownCommands.entrySet().iterator(); it.hasNext();) {
                             Map.Entry entry = (Map.Entry)it.next();
@@ -283,20 +570,19 @@ public class PythonLoader extends JavaPlugin {
       return true;
     }
 
+    /**
+     * Reload a plugin, the new version is loaded in the background and replaces the
+     * running one on the server thread once it is ready.
+     */
     private boolean reloadPlugin(String pluginName, String fileName)
-      throws Exception
     {
-      boolean unload = unloadPlugin(pluginName);
-      boolean load = loadPlugin(fileName);
-
-      if ((unload) && (load)) {
-          getServer().getLogger().info("Reloaded " + pluginName + " successfully!");
-      } else {
-          getServer().getLogger().severe("Error reloading " + pluginName + ".");
-
-        return false;
+      File file = new File("plugins", fileName);
+      if (!file.exists()) {
+          getServer().getLogger().severe("Error reloading " + pluginName + ", " + file + " does not exist.");
+          return false;
       }
-
+      getServer().getLogger().info("Reloading " + pluginName + " from " + file + " in the background");
+      getHotReloader().reload(file, pluginName);
       return true;
     }
 
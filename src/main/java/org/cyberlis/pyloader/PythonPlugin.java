@@ -16,15 +16,25 @@ along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
 */
 package org.cyberlis.pyloader;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -37,11 +47,13 @@ import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.generator.BiomeProvider;
 import org.bukkit.generator.ChunkGenerator;
+import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.PluginBase;
 import org.bukkit.plugin.PluginDescriptionFile;
 import org.bukkit.plugin.PluginLoader;
 import org.bukkit.plugin.PluginLogger;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.scheduler.BukkitTask;
 import org.cyberlis.dataloaders.PluginDataFile;
 import org.python.util.PythonInterpreter;
 
@@ -64,11 +76,51 @@ private boolean isEnabled = false;
     private PluginLogger logger = null;
     private PluginDataFile dataFile = null; //data file used for retrieving resources
 
+    /**
+     * cache for the resources of this plugin, null if disabled
+     */
+    PythonResourceCache resourceCache;
+
     /**
      * interpreter that was used to load this plugin.
      */
     PythonInterpreter interp;
 
+    /**
+     * importer for the modules inside the plugin file
+     */
+    PythonPluginImporter importer;
+
+    /**
+     * lazy plugin registered with bukkit in place of this one, null if this one is registered itself
+     */
+    LazyPythonPlugin owner;
+
+    /**
+     * writer which saves the config in the background, null to save it on the calling thread
+     */
+    PythonConfigWriter configWriter;
+
+    /**
+     * time it took to load this plugin
+     */
+    long loadNanos = -1;
+
+    /**
+     * bytes allocated while loading this plugin, -1 if unknown
+     */
+    long loadAllocatedBytes = -1;
+
+    /**
+     * event handlers registered for this plugin, for statistics and batched delivery
+     */
+    final Set<PythonEventHandler> eventHandlers = new CopyOnWriteArraySet<PythonEventHandler>();
+
+    /**
+     * task passing buffered events to the handlers registered with batch=True, null if not running
+     */
+    private BukkitTask batchTask;
+
     /**
      * Returns the folder that the plugin data's files are located in. The
      * folder might not yet exist.
@@ -188,7 +240,8 @@ private boolean isEnabled = false;
             this.description = description;
             this.dataFolder = dataFolder;
             //this.classLoader = classLoader;
-            this.config = YamlConfiguration.loadConfiguration(new File(dataFolder, "config.yml"));
+            this.configFile = new File(dataFolder, "config.yml");
+            this.config = YamlConfiguration.loadConfiguration(configFile);
             getServer().getLogger().info("Plugin " + getDescription().getFullName() + " will be initialized");
         }
     }
@@ -229,11 +282,13 @@ private boolean isEnabled = false;
         String alias = name.toLowerCase();
         PluginCommand command = getServer().getPluginCommand(alias);
 
-        if ((command != null) && (command.getPlugin() != this)) {
+        // the commands of a lazy plugin belong to the lazy plugin bukkit knows
+        Plugin self = owner != null ? owner : this;
+        if ((command != null) && (command.getPlugin() != self)) {
             command = getServer().getPluginCommand(getDescription().getName().toLowerCase() + ":" + alias);
         }
 
-        if ((command != null) && (command.getPlugin() == this)) {
+        if ((command != null) && (command.getPlugin() == self)) {
             return command;
         } else {
             return null;
@@ -284,12 +339,43 @@ private boolean isEnabled = false;
 
         try {
             dataFile.reload();
+            if (resourceCache != null) {
+                byte[] content = resourceCache.get(dataFile, filename);
+                return content == null ? null : new ByteArrayInputStream(content);
+            }
             return dataFile.getStream(filename);
         } catch (IOException e) {
             return null;
         }
     }
 
+    /**
+     * Get a resource as a read only buffer, served from the resource cache if it is enabled.
+     *
+     * @param filename name of the resource
+     * @return content of the resource or null if it does not exist
+     */
+    public ByteBuffer getResourceBuffer(String filename) {
+        if(filename == null) {
+            throw new IllegalArgumentException("Filename cannot be null");
+        }
+
+        try {
+            dataFile.reload();
+            byte[] content;
+            if (resourceCache != null) {
+                content = resourceCache.get(dataFile, filename);
+            } else {
+                try (InputStream stream = dataFile.getStream(filename)) {
+                    content = stream == null ? null : stream.readAllBytes();
+                }
+            }
+            return content == null ? null : ByteBuffer.wrap(content).asReadOnlyBuffer();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
     @Override
     public void saveResource(String resourcePath, boolean replace) {
         if (resourcePath == null || resourcePath.equals("")) {
@@ -298,32 +384,139 @@ private boolean isEnabled = false;
 
         // TODO is this necessary for use with PluginDataFile?
         resourcePath = resourcePath.replace('\\', '/');
-        InputStream in = getResource(resourcePath);
-        if (in == null) {
-            throw new IllegalArgumentException("The embedded resource '" + resourcePath + "' cannot be found in " + getFile());
+        File outFile = resolveDataFile(resourcePath);
+        try {
+            if (extract(resourcePath, outFile, replace) == Extracted.MISSING) {
+                throw new IllegalArgumentException("The embedded resource '" + resourcePath + "' cannot be found in " + getFile());
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(JavaPlugin.class.getName()).log(Level.SEVERE, "Could not save " + outFile.getName() + " to " + outFile, ex);
         }
+    }
 
-        File outFile = new File(getDataFolder(), resourcePath);
-        int lastIndex = resourcePath.lastIndexOf('/');
-        File outDir = new File(getDataFolder(), resourcePath.substring(0, lastIndex >= 0 ? lastIndex : 0));
+    /**
+     * Save all resources matching a glob pattern to the data folder, in parallel.
+     *
+     * @param glob pattern like "lang/*.yml" or "schematics/**", see {@link java.nio.file.FileSystem#getPathMatcher(String)}
+     * @param replace whether to replace files which already exist
+     * @return number of files written, files kept because they exist are not counted
+     */
+    public int saveResources(String glob, boolean replace) {
+        if (glob == null || glob.equals("")) {
+            throw new IllegalArgumentException("Glob cannot be null or empty");
+        }
 
-        if (!outDir.exists()) {
-            outDir.mkdirs();
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        List<String> names = new ArrayList<String>();
+        try {
+            dataFile.reload();
+            for (String name : dataFile.getEntryNames()) {
+                if (matcher.matches(Paths.get(name))) {
+                    names.add(name);
+                }
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(JavaPlugin.class.getName()).log(Level.SEVERE, "Could not list the resources of " + getFile(), ex);
+            return 0;
         }
 
+        AtomicInteger saved = new AtomicInteger(0);
+        names.parallelStream().forEach((name) -> {
+            File outFile;
+            try {
+                outFile = resolveDataFile(name);
+            } catch (IllegalArgumentException ex) {
+                Logger.getLogger(JavaPlugin.class.getName()).log(Level.WARNING, ex.getMessage());
+                return;
+            }
+            try {
+                if (extract(name, outFile, replace) == Extracted.WRITTEN) {
+                    saved.incrementAndGet();
+                }
+            } catch (IOException ex) {
+                Logger.getLogger(JavaPlugin.class.getName()).log(Level.SEVERE, "Could not save " + outFile.getName() + " to " + outFile, ex);
+            }
+        });
+        return saved.get();
+    }
+
+    /**
+     * @param resourcePath name of a resource
+     * @return file in the data folder the resource is saved to
+     * @throws IllegalArgumentException thrown if the file would be outside the data folder
+     */
+    private File resolveDataFile(String resourcePath) {
+        Path folder = getDataFolder().toPath().toAbsolutePath().normalize();
+        Path target = folder.resolve(resourcePath).normalize();
+        if (!target.startsWith(folder) || target.equals(folder)) {
+            throw new IllegalArgumentException("The embedded resource '" + resourcePath + "' of " + getFile()
+                    + " would be saved outside of " + getDataFolder());
+        }
+        return target.toFile();
+    }
+
+    /**
+     * result of extracting a resource
+     */
+    private enum Extracted {
+        /**
+         * the resource does not exist
+         */
+        MISSING,
+        /**
+         * the file exists and was kept
+         */
+        SKIPPED,
+        /**
+         * the file was written
+         */
+        WRITTEN
+    }
+
+    /**
+     * Copy a resource to a temporary file next to outFile, then move it in place, so
+     * outFile is never seen half written. Files of plugin directories are copied by
+     * the file system, zip entries are streamed.
+     *
+     * @param resourcePath name of the resource
+     * @param outFile file to write
+     * @param replace whether to replace outFile if it exists
+     * @return whether the file was written, kept or the resource does not exist
+     * @throws IOException thrown if copying fails
+     */
+    private Extracted extract(String resourcePath, File outFile, boolean replace) throws IOException {
+        dataFile.reload();
+        Path source = dataFile.getPath(resourcePath);
+        InputStream in = source == null ? dataFile.getStream(resourcePath) : null;
+        if (source == null && in == null) {
+            return Extracted.MISSING;
+        }
         try {
-            if (!outFile.exists() || replace) {
-                OutputStream out = new FileOutputStream(outFile);
-                byte[] buf = new byte[1024];
-                int len;
-                while ((len = in.read(buf)) > 0) {
-                    out.write(buf, 0, len);
+            if (outFile.exists() && !replace) {
+                return Extracted.SKIPPED;
+            }
+            Path target = outFile.toPath();
+            Files.createDirectories(target.getParent());
+            Path temp = Files.createTempFile(target.getParent(), "." + outFile.getName(), ".tmp");
+            try {
+                if (source != null) {
+                    Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+                } else {
+                    Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
                 }
-                out.close();
+                try {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            return Extracted.WRITTEN;
+        } finally {
+            if (in != null) {
                 in.close();
             }
-        } catch (IOException ex) {
-            Logger.getLogger(JavaPlugin.class.getName()).log(Level.SEVERE, "Could not save " + outFile.getName() + " to " + outFile, ex);
         }
     }
 
@@ -348,6 +541,10 @@ private boolean isEnabled = false;
     }
 
     public void saveConfig() {
+        if (configWriter != null) {
+            configWriter.markDirty(this);
+            return;
+        }
         try {
             getConfig().save(configFile);
         } catch (IOException ex) {
@@ -355,6 +552,48 @@ private boolean isEnabled = false;
         }
     }
 
+    /**
+     * Start passing buffered events to the handlers registered with batch=True once
+     * per tick, if there are any and the plugin is enabled.
+     */
+    synchronized void startBatches() {
+        if (batchTask != null || !isEnabled()) {
+            return;
+        }
+        for (PythonEventHandler handler : eventHandlers) {
+            if (handler.batch != null) {
+                batchTask = getServer().getScheduler().runTaskTimer(this, this::flushBatches, 1, 1);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Pass the events still buffered to their handlers and stop the task doing that every tick.
+     */
+    synchronized void stopBatches() {
+        if (batchTask != null) {
+            batchTask.cancel();
+            batchTask = null;
+            flushBatches();
+        }
+    }
+
+    private void flushBatches() {
+        for (PythonEventHandler handler : eventHandlers) {
+            if (handler.batch != null) {
+                handler.batch.flush(handler, this);
+            }
+        }
+    }
+
+    /**
+     * @return file the config is saved to
+     */
+    File getConfigFile() {
+        return configFile;
+    }
+
     public void saveDefaultConfig() {
         saveResource("config.yml", false);
     }
@@ -363,6 +602,34 @@ private boolean isEnabled = false;
         this.dataFile = file;
     }
 
+    PluginDataFile getDataFile() {
+        return dataFile;
+    }
+
+    /**
+     * @return plugin running the python code, differs from this one for lazy plugins
+     */
+    PythonPlugin active() {
+        return this;
+    }
+
+    /**
+     * Close the data file of this plugin after it was unloaded.
+     */
+    void closeDataFile() {
+        if (resourceCache != null) {
+            resourceCache.clear();
+        }
+        if (dataFile == null) {
+            return;
+        }
+        try {
+            dataFile.close();
+        } catch (IOException e) {
+            getServer().getLogger().log(Level.WARNING, "[PPLoader] Could not close " + getFile(), e);
+        }
+    }
+
     /* @Override
     public String getName() {
         return "PythonPlugin";
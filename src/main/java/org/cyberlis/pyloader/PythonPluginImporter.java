@@ -0,0 +1,118 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.pyloader;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.cyberlis.dataloaders.PluginDataFile;
+import org.python.core.Py;
+import org.python.core.PyList;
+import org.python.core.PyModule;
+import org.python.core.PyObject;
+import org.python.core.PyString;
+import org.python.core.imp;
+
+/**
+ * sys.meta_path importer for the modules inside a python plugin file, so they are
+ * compiled through the {@link PythonCodeCache} instead of by jython on every start.
+ */
+public class PythonPluginImporter {
+
+    private final PluginDataFile data;
+    private final PythonCodeCache cache;
+
+    /**
+     * location of the plugin file, used for __file__ and __path__
+     */
+    private final String location;
+
+    /**
+     * @param data plugin file to import modules from
+     * @param cache cache to compile the modules with
+     * @param location location of the plugin file
+     */
+    public PythonPluginImporter(PluginDataFile data, PythonCodeCache cache, String location) {
+        this.data = data;
+        this.cache = cache;
+        this.location = location;
+    }
+
+    /**
+     * @return location of the plugin file
+     */
+    public String getLocation() {
+        return location;
+    }
+
+    public Object find_module(String fullname) {
+        return find_module(fullname, Py.None);
+    }
+
+    public Object find_module(String fullname, PyObject path) {
+        return sourceName(fullname) != null ? this : null;
+    }
+
+    public PyObject load_module(String fullname) throws IOException {
+        PyObject existing = Py.getSystemState().modules.__finditem__(fullname);
+        if (existing != null) {
+            return existing;
+        }
+
+        String sourceName = sourceName(fullname);
+        if (sourceName == null) {
+            throw Py.ImportError("No module named " + fullname);
+        }
+        byte[] source;
+        try (InputStream stream = open(sourceName)) {
+            source = stream.readAllBytes();
+        }
+
+        String filename = location + "/" + sourceName;
+        if (sourceName.endsWith("/__init__.py")) {
+            PyModule module = imp.addModule(fullname);
+            String packagePath = location + "/" + fullname.replace('.', '/');
+            module.__setattr__("__path__", new PyList(new PyObject[] { new PyString(packagePath) }));
+        }
+        imp.addModule(fullname).__setattr__("__loader__", Py.java2py(this));
+        return imp.createFromCode(fullname, cache.compile(fullname, source, filename), filename);
+    }
+
+    /**
+     * @param fullname dotted module name
+     * @return name of the source file inside the plugin file or null if the module is not part of it
+     */
+    private String sourceName(String fullname) {
+        String base = fullname.replace('.', '/');
+        try {
+            data.reload();
+            for (String candidate : new String[] { base + "/__init__.py", base + ".py" }) {
+                if (data.exists(candidate)) {
+                    return candidate;
+                }
+            }
+        } catch (IOException e) {
+            // a plugin file which can not be read has no modules
+        }
+        return null;
+    }
+
+    private InputStream open(String name) throws IOException {
+        data.reload();
+        return data.getStream(name);
+    }
+}
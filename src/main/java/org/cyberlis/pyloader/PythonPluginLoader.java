@@ -16,28 +16,31 @@ along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
 */
 package org.cyberlis.pyloader;
 
-import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.SequenceInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.Validate;
 import org.bukkit.Server;
 import org.bukkit.event.Event;
-import org.bukkit.event.EventException;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.server.PluginDisableEvent;
 import org.bukkit.event.server.PluginEnableEvent;
@@ -57,6 +60,8 @@ import org.cyberlis.plugin.BukkitPluginManagerWrapper;
 import org.cyberlis.plugin.PaperPluginManagerWrapper;
 import org.cyberlis.plugin.PluginManagerWrapper;
 import org.cyberlis.pyloader.PythonPlugin;
+import org.python.core.Py;
+import org.python.core.PyCode;
 import org.python.core.PyDictionary;
 import org.python.core.PyList;
 import org.python.core.PyObject;
@@ -90,7 +95,30 @@ public class PythonPluginLoader implements PluginLoader {
             Pattern.compile("^(.*)\\.pyp$"),
         };
 
-    private HashSet<String> loadedplugins = new HashSet<String>();
+    private Set<String> loadedplugins = ConcurrentHashMap.newKeySet();
+
+    private static final String[] PRE_PLUGIN_SCRIPTS = {"preload.py"};
+    private static final String[] POST_PLUGIN_SCRIPTS = {"postload.py"};
+
+    /**
+     * bundled scripts, compiled once and shared by all plugins
+     */
+    private final Map<String, PyCode> scriptCode = new ConcurrentHashMap<String, PyCode>();
+
+    /**
+     * system state of the shared runtime mode
+     */
+    private PySystemState sharedState;
+
+    /**
+     * dispatcher for async handlers, only used if PPLoader is not available
+     */
+    private PythonAsyncDispatcher asyncDispatcher;
+
+    /**
+     * plugin.yml index, only used if PPLoader is not available
+     */
+    private PythonDescriptionCache descriptionCache;
 
     /**
      * @param server server to initialize with
@@ -128,13 +156,19 @@ public class PythonPluginLoader implements PluginLoader {
             throw new InvalidPluginException(new Exception("filename '"+file.getName()+"' does not end in py, dir, zip, or pyp! did you add a regex without altering loadPlugin()?"));
         }
 
+        // the plugin keeps the data file open for its resources and imports until it is unloaded
+        boolean loaded = false;
         try {
-            return loadPlugin(file, ignoreSoftDependencies, data);
+            Plugin plugin = loadPlugin(file, ignoreSoftDependencies, data);
+            loaded = true;
+            return plugin;
         } finally {
-            try {
-                data.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+            if (!loaded) {
+                try {
+                    data.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
             }
         }
     }
@@ -153,18 +187,23 @@ public class PythonPluginLoader implements PluginLoader {
 
     private Plugin loadPlugin(File file, boolean ignoreSoftDependencies, PluginDataFile data)
             throws InvalidPluginException/*, InvalidDescriptionException, UnknownDependencyException*/ {
-        Properties props;
         // System.out.println("[PPLoader] Loading Plugin " + file.getName());
         server.getLogger().info("[PPLoader] Loading Plugin " + file.getName());
+        long startNanos = System.nanoTime();
+        long startAllocated = allocatedBytes();
         PythonPlugin result = null;
         PluginDescriptionFile description = null;
         InputStream stream = null;
         try {
-            stream = data.getStream("plugin.yml");
-            if (stream == null) {
-                throw new InvalidPluginException(new Exception("You must include plugin.yml!"));
+            PythonDescriptionCache descriptions = getDescriptionCache();
+            description = descriptions.get(file);
+            if (description == null) {
+                stream = data.getStream("plugin.yml");
+                if (stream == null) {
+                    throw new InvalidPluginException(new Exception("You must include plugin.yml!"));
+                }
+                description = descriptions.put(file, stream.readAllBytes());
             }
-            description = new PluginDescriptionFile(stream);
         } catch (IOException ex) {
             throw new InvalidPluginException(ex);
         } catch (YAMLException ex) {
@@ -213,15 +252,66 @@ public class PythonPluginLoader implements PluginLoader {
                 throw new UnknownDependencyException(pluginName);
             }
         }
-        props = PySystemState.getBaseProperties();
-        props = setDefaultPythonPath(props, file.getAbsolutePath());
+        if (getDescriptionCache().getOptions(file).getBoolean("lazy", false)) {
+            LazyPythonPlugin lazy = new LazyPythonPlugin(this,
+                    getDescriptionCache().getOptions(file).getStringList("lazy-events"));
+            lazy.initialize(this, server, description, dataFolder, file);
+            lazy.setDataFile(data);
+            lazy.resourceCache = newResourceCache();
+            lazy.configWriter = getConfigWriter();
+            result = lazy;
+        } else {
+            result = createPlugin(file, data, description, dataFolder);
+        }
+
+        if (!loadedplugins.contains(description.getName())) {
+            loadedplugins.add(description.getName());
+        }
 
-        PySystemState state = new PySystemState();
-        PySystemState.initialize(System.getProperties(), props, null);
-        PyList pythonpath = state.path;
+        result.loadNanos = System.nanoTime() - startNanos;
+        result.loadAllocatedBytes = startAllocated < 0 ? -1 : allocatedBytes() - startAllocated;
+        server.getLogger().info(String.format("[PPLoader] Loaded %s in %d ms, %s allocated (%s)",
+                description.getFullName(), result.loadNanos / 1000000,
+                result.loadAllocatedBytes < 0 ? "unknown" : (result.loadAllocatedBytes / 1024) + " KiB",
+                result instanceof LazyPythonPlugin ? "lazy" : isSharedRuntime() ? "shared runtime" : "isolated runtime"));
+        return result;
+    }
+
+    /**
+     * Create the python runtime of a plugin, run its main module and create the plugin instance.
+     *
+     * @param file plugin file
+     * @param data data file of the plugin, stays open
+     * @param description description of the plugin
+     * @param dataFolder data folder of the plugin
+     * @return initialized plugin, not enabled yet
+     * @throws InvalidPluginException thrown if the main module fails or has no main class
+     */
+    PythonPlugin createPlugin(File file, PluginDataFile data, PluginDescriptionFile description, File dataFolder)
+            throws InvalidPluginException {
+        Properties props;
+        PythonPlugin result = null;
+        boolean sharedRuntime = isSharedRuntime();
+        PySystemState state;
         PyString filepath = new PyString(file.getAbsolutePath());
-        pythonpath.append(filepath);
+        if (sharedRuntime) {
+            state = getSharedState();
+            synchronized (state.path) {
+                if (!state.path.contains(filepath)) {
+                    state.path.append(filepath);
+                }
+            }
+        } else {
+            props = PySystemState.getBaseProperties();
+            props = setDefaultPythonPath(props, file.getAbsolutePath());
+
+            state = new PySystemState();
+            PySystemState.initialize(System.getProperties(), props, null);
+            PyList pythonpath = state.path;
+            pythonpath.append(filepath);
+        }
 
+        PythonCodeCache codeCache = getCodeCache();
 
         String mainfile = "plugin.py";
         InputStream instream = null;
@@ -238,41 +328,27 @@ public class PythonPluginLoader implements PluginLoader {
         if (instream == null) {
             throw new InvalidPluginException(new FileNotFoundException("Can not find plugin.py or main.py"));
         }
+        PythonPluginImporter importer = new PythonPluginImporter(data, codeCache, file.getAbsolutePath());
+        synchronized (state.meta_path) {
+            state.meta_path.append(Py.java2py(importer));
+        }
         PythonInterpreter interp = null;
         try {
             PyDictionary table = new PyDictionary();
             interp = new PythonInterpreter(table, state);
 
-            String[] pre_plugin_scripts = {"preload.py"};
-            String[] post_plugin_scripts = {"postload.py"};
-
             // Run scripts designed to be run before plugin creation
-            for (String script : pre_plugin_scripts) {
-                InputStream metastream = null;
-                try {
-                    metastream = this.getClass().getClassLoader().getResourceAsStream("scripts/"+script);
-                    if (metastream != null) {
-                        interp.execfile(metastream);
-                    }
-                } catch (Exception ex) {
-                    ex.printStackTrace();
-                    server.getLogger().severe("Exception while executing \"" + script + "\": " + ex.getMessage());
-                } finally {
-                    if (metastream != null) {
-                        metastream.close();
-                    }
-                }
-            }
+            runScripts(interp, PRE_PLUGIN_SCRIPTS);
 
             String imports = "from org.cyberlis.pyloader import PythonPlugin\n";
-            instream = new SequenceInputStream(Collections.enumeration(Arrays.asList(
-                new ByteArrayInputStream(imports.getBytes()),
-                instream)));
-      
-            interp.execfile(instream);
-
+            ByteArrayOutputStream source = new ByteArrayOutputStream();
+            source.write(imports.getBytes());
+            instream.transferTo(source);
             instream.close();
 
+            interp.exec(codeCache.compile(mainfile.substring(0, mainfile.length() - 3), source.toByteArray(),
+                    file.getAbsolutePath() + "/" + mainfile));
+
             String mainclass = description.getMain();
             PyObject pyClass = interp.get(mainclass);
             if (pyClass == null) {
@@ -286,32 +362,25 @@ public class PythonPluginLoader implements PluginLoader {
             interp.set("PYPLUGIN", result);
 
             result.interp = interp;
+            result.importer = importer;
 
             // Run scripts designed to be run after plugin creation
-            for (String script : post_plugin_scripts) {
-                InputStream metastream = null;
-                try {
-                    metastream = this.getClass().getClassLoader().getResourceAsStream("scripts/"+script);
-                    if (metastream != null) {
-                        interp.execfile(metastream);
-                    }
-                } catch (Exception ex) {
-                    ex.printStackTrace();
-                    server.getLogger().severe("Exception while executing \"" + script + "\": " + ex.getMessage());
-                } finally {
-                    if (metastream != null) {
-                        metastream.close();
-                    }
-                }
-            }
+            runScripts(interp, POST_PLUGIN_SCRIPTS);
 
             result.initialize(this, server, description, dataFolder, file);
             result.setDataFile(data);
+            result.resourceCache = newResourceCache();
+            result.configWriter = getConfigWriter();
 
         } catch (Throwable t) {
+            if (sharedRuntime) {
+                // the failed plugin's modules would otherwise stay in the shared sys.modules
+                removeImporters(state, (candidate) -> candidate == importer);
+            }
             throw new InvalidPluginException(t);
         } finally {
-            if (interp != null) {
+            // closing the interpreter cleans up its system state, which other plugins still use in the shared runtime
+            if (interp != null && !sharedRuntime) {
                 try {
                     interp.close();
                 } catch (Throwable t) {
@@ -320,12 +389,189 @@ public class PythonPluginLoader implements PluginLoader {
             }
         }
 
-        if (!loadedplugins.contains(description.getName())) {
-            loadedplugins.add(description.getName());
-        }
         return result;
     }
 
+    /**
+     * @return resource cache for a plugin, null if disabled
+     */
+    private PythonResourceCache newResourceCache() {
+        PythonLoader ppLoader = getPPLoader();
+        long size = ppLoader != null ? ppLoader.getConfig().getLong("resource-cache-size", 1024) : 0;
+        return size > 0 ? new PythonResourceCache(size * 1024) : null;
+    }
+
+    /**
+     * @return config writer of PPLoader, null if configs are saved on the calling thread
+     */
+    private PythonConfigWriter getConfigWriter() {
+        PythonLoader ppLoader = getPPLoader();
+        return ppLoader != null ? ppLoader.getConfigWriter() : null;
+    }
+
+    /**
+     * @return whether events are passed to python handlers as {@link PythonEventAdapter}
+     */
+    private boolean useEventAdapters() {
+        PythonLoader ppLoader = getPPLoader();
+        return ppLoader != null && ppLoader.getConfig().getBoolean("event-adapters", false);
+    }
+
+    /**
+     * @return whether all python plugins run in one jython runtime
+     */
+    boolean isSharedRuntime() {
+        PythonLoader ppLoader = getPPLoader();
+        return ppLoader != null && ppLoader.getConfig().getBoolean("shared-runtime", false);
+    }
+
+    /**
+     * Drop the references the loader and the shared runtime keep to an unloaded
+     * plugin, so it can be garbage collected, and hand it to the leak tracker.
+     *
+     * @param plugin plugin which was unloaded
+     * @param leakTracker tracker to watch the plugin with, null to not watch it
+     */
+    void releasePlugin(PythonPlugin plugin, PythonLeakTracker leakTracker) {
+        if (plugin.active() != plugin) {
+            releasePlugin(plugin.active(), leakTracker);
+        }
+        PythonInterpreter interp = plugin.interp;
+        PySystemState state = interp == null ? null : interp.getSystemState();
+        boolean shared = state != null && state == sharedState;
+        if (leakTracker != null) {
+            leakTracker.track(plugin, shared ? null : state);
+        }
+        plugin.eventHandlers.clear();
+        plugin.closeDataFile();
+
+        if (shared) {
+            // modules imported from the plugin file stay in the shared sys.modules otherwise
+            PythonPluginImporter importer = plugin.importer;
+            removeImporters(state, (candidate) -> candidate == importer);
+            // a reloaded version of the plugin still needs the path entry
+            String location = plugin.getFile().getAbsolutePath();
+            boolean reloaded = false;
+            synchronized (state.meta_path) {
+                for (PyObject candidate : state.meta_path.asIterable()) {
+                    Object other = candidate.__tojava__(PythonPluginImporter.class);
+                    reloaded |= other instanceof PythonPluginImporter
+                            && ((PythonPluginImporter) other).getLocation().equals(location);
+                }
+            }
+            if (!reloaded) {
+                synchronized (state.path) {
+                    state.path.remove(new PyString(location));
+                }
+            }
+        }
+        plugin.importer = null;
+        plugin.interp = null;
+    }
+
+    /**
+     * Drop the importers and modules still left in the shared runtime for a plugin file,
+     * called on the server thread once the running version of the plugin is unloaded.
+     *
+     * @param file plugin file
+     */
+    void evictPlugin(File file) {
+        PySystemState state = sharedState;
+        if (state != null) {
+            String location = file.getAbsolutePath();
+            removeImporters(state, (importer) -> importer.getLocation().equals(location));
+        }
+    }
+
+    /**
+     * Remove plugin importers from sys.meta_path and the modules they imported from sys.modules.
+     *
+     * @param state system state to clean up
+     * @param filter importers to remove
+     */
+    private void removeImporters(PySystemState state, Predicate<PythonPluginImporter> filter) {
+        List<Object> importers = new ArrayList<>();
+        synchronized (state.meta_path) {
+            for (int i = state.meta_path.size() - 1; i >= 0; i--) {
+                Object importer = state.meta_path.pyget(i).__tojava__(PythonPluginImporter.class);
+                if (importer instanceof PythonPluginImporter && filter.test((PythonPluginImporter) importer)) {
+                    importers.add(importer);
+                    state.meta_path.remove(i);
+                }
+            }
+        }
+        for (PyObject name : ((PyList) state.modules.invoke("keys")).asIterable()) {
+            PyObject module = state.modules.__finditem__(name);
+            PyObject loader = module == null ? null : module.__findattr__("__loader__");
+            if (loader != null && importers.contains(loader.__tojava__(PythonPluginImporter.class))) {
+                state.modules.__delitem__(name);
+            }
+        }
+    }
+
+    /**
+     * @return the system state shared by all plugins in the shared runtime mode
+     */
+    private synchronized PySystemState getSharedState() {
+        if (sharedState == null) {
+            PySystemState.initialize(System.getProperties(), PySystemState.getBaseProperties(), null);
+            sharedState = new PySystemState();
+        }
+        return sharedState;
+    }
+
+    /**
+     * @return bytes allocated by the current thread so far, -1 if the jvm does not support measuring it
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemoryEnabled()) {
+                return sunBean.getCurrentThreadAllocatedBytes();
+            }
+        }
+        return -1;
+    }
+
+    private void runScripts(PythonInterpreter interp, String[] scripts) {
+        for (String script : scripts) {
+            try {
+                PyCode code = getScriptCode(script);
+                if (code != null) {
+                    interp.exec(code);
+                }
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                server.getLogger().severe("Exception while executing \"" + script + "\": " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Compile a bundled script on first use, every plugin runs the same code object afterwards.
+     * @param script name of the script in the scripts folder
+     * @return compiled script or null if the script is not bundled
+     * @throws IOException thrown if reading the script fails
+     */
+    private PyCode getScriptCode(String script) throws IOException {
+        PyCode code = scriptCode.get(script);
+        if (code == null) {
+            try (InputStream metastream = this.getClass().getClassLoader().getResourceAsStream("scripts/" + script)) {
+                if (metastream == null) {
+                    return null;
+                }
+                code = getCodeCache().compile(script.substring(0, script.length() - 3), metastream.readAllBytes(),
+                        "scripts/" + script);
+            }
+            PyCode existing = scriptCode.putIfAbsent(script, code);
+            if (existing != null) {
+                code = existing;
+            }
+        }
+        return code;
+    }
+
     private boolean isPluginLoaded(String name) {
         if (loadedplugins.contains(name)) {
             return true;
@@ -348,6 +594,10 @@ public class PythonPluginLoader implements PluginLoader {
         if (plugin.isEnabled()) {
             PythonPlugin pyPlugin = (PythonPlugin) plugin;
 
+            // batched events fired before the plugin was disabled still reach it
+            pyPlugin.active().stopBatches();
+            pyPlugin.stopBatches();
+
             try {
                 pyPlugin.setEnabled(false);
             } catch (Throwable ex) {
@@ -357,7 +607,14 @@ public class PythonPluginLoader implements PluginLoader {
                         ex);
             }
 
+            // saves requested by onDisable are written before the plugin counts as disabled
+            if (pyPlugin.configWriter != null) {
+                pyPlugin.configWriter.flush(pyPlugin);
+                pyPlugin.configWriter.flush(pyPlugin.active());
+            }
+
             getPlugInManager().callEvent(new PluginDisableEvent(plugin));
+            PythonPluginStats.unregister(pyPlugin);
 
             String pluginName = pyPlugin.getDescription().getName();
             if (loadedplugins.contains(pluginName)) {
@@ -390,6 +647,10 @@ public class PythonPluginLoader implements PluginLoader {
                         ex);
             }
 
+            // listeners registered before the plugin was enabled
+            pyPlugin.startBatches();
+            PythonPluginStats.register(pyPlugin);
+
             // Perhaps abort here, rather than continue going, but as it stands,
             // an abort is not possible the way it's currently written
             getPlugInManager().callEvent(new PluginEnableEvent(plugin));
@@ -402,34 +663,88 @@ public class PythonPluginLoader implements PluginLoader {
         boolean useTimings = getPlugInManager().useTimings();
         Map<Class<? extends Event>, Set<RegisteredListener>> ret = new HashMap<Class<? extends Event>, Set<RegisteredListener>>();
         PythonListener pyListener = (PythonListener)listener;
+        boolean adapt = useEventAdapters();
 
         for(Map.Entry<Class<? extends Event>, Set<PythonEventHandler>> entry : pyListener.handlers.entrySet()) {
-            Set<RegisteredListener> eventSet = new HashSet<RegisteredListener>();
-
-            for(final PythonEventHandler handler : entry.getValue()) {
-                EventExecutor executor = new EventExecutor() {
-
-                    @Override
-                    public void execute(Listener listener, Event event) throws EventException {
-                        ((PythonListener)listener).fireEvent(event, handler);
-                    }
-                };
-                if(useTimings) {
-                    eventSet.add(new TimedRegisteredListener(pyListener, executor, handler.priority, plugin, false));
-                } else {
-                    eventSet.add(new RegisteredListener(pyListener, executor, handler.priority, plugin, false));
+            Class<? extends Event> type = entry.getKey();
+            if (adapt) {
+                PythonEventAdapter.prepare(type);
+            }
+            for(PythonEventHandler handler : entry.getValue()) {
+                handler.adapt = adapt;
+                if (plugin instanceof PythonPlugin) {
+                    ((PythonPlugin) plugin).eventHandlers.add(handler);
+                }
+            }
+            if (plugin instanceof PythonPlugin) {
+                ((PythonPlugin) plugin).startBatches();
+            }
+
+            // python events have a handler list per type or name, which bukkit can not find through
+            // the static getHandlerList, so their listeners are registered here instead of returned
+            if (type == DynamicPythonEvent.class) {
+                Map<String, List<PythonEventHandler>> byName = new HashMap<String, List<PythonEventHandler>>();
+                for(PythonEventHandler handler : entry.getValue()) {
+                    byName.computeIfAbsent(handler.eventName, (name) -> new ArrayList<PythonEventHandler>()).add(handler);
                 }
+                for(Map.Entry<String, List<PythonEventHandler>> named : byName.entrySet()) {
+                    DynamicPythonEvent.getHandlerList(named.getKey()).registerAll(
+                            createRegisteredListeners(pyListener, type, named.getValue(), plugin, useTimings));
+                }
+            } else if (PythonCustomEvent.class.isAssignableFrom(type) && type != PythonCustomEvent.class) {
+                PythonCustomEvent.getHandlerList(type.asSubclass(PythonCustomEvent.class)).registerAll(
+                        createRegisteredListeners(pyListener, type, entry.getValue(), plugin, useTimings));
+            } else {
+                ret.put(type, createRegisteredListeners(pyListener, type, entry.getValue(), plugin, useTimings));
             }
-            ret.put(entry.getKey(), eventSet);
         }
         return ret;
     }
 
+    /**
+     * @param pyListener listener the handlers belong to
+     * @param type event type the handlers are listening for
+     * @param handlers handlers to create registered listeners for
+     * @param plugin plugin the handlers belong to
+     * @param useTimings whether to create timed registered listeners
+     * @return one registered listener per priority, which calls all handlers of that priority
+     */
+    private Set<RegisteredListener> createRegisteredListeners(PythonListener pyListener, Class<? extends Event> type,
+            Collection<PythonEventHandler> handlers, Plugin plugin, boolean useTimings) {
+        Set<RegisteredListener> eventSet = new HashSet<RegisteredListener>();
+        Map<EventPriority, List<PythonEventHandler>> byPriority = new EnumMap<EventPriority, List<PythonEventHandler>>(EventPriority.class);
+        for(PythonEventHandler handler : handlers) {
+            byPriority.computeIfAbsent(handler.priority, (priority) -> new ArrayList<PythonEventHandler>()).add(handler);
+        }
+
+        for(Map.Entry<EventPriority, List<PythonEventHandler>> group : byPriority.entrySet()) {
+            EventExecutor executor = new PythonEventExecutor(type,
+                    group.getValue().toArray(new PythonEventHandler[0]), plugin, getAsyncDispatcher());
+            // bukkit skips cancelled events for the whole group only if no handler in it wants them
+            boolean ignoreCancelled = true;
+            for (PythonEventHandler handler : group.getValue()) {
+                ignoreCancelled &= handler.ignoreCancelled;
+            }
+            if(useTimings) {
+                eventSet.add(new TimedRegisteredListener(pyListener, executor, group.getKey(), plugin, ignoreCancelled));
+            } else {
+                eventSet.add(new RegisteredListener(pyListener, executor, group.getKey(), plugin, ignoreCancelled));
+            }
+        }
+        return eventSet;
+    }
+
     @Override
     public PluginDescriptionFile getPluginDescription(File file)
             throws InvalidDescriptionException {
         Validate.notNull(file, "File cannot be null");
 
+        PythonDescriptionCache descriptions = getDescriptionCache();
+        PluginDescriptionFile cached = descriptions.get(file);
+        if (cached != null) {
+            return cached;
+        }
+
         InputStream stream = null;
         PluginDataFile data = null;
 
@@ -461,7 +776,7 @@ public class PythonPluginLoader implements PluginLoader {
                 throw new InvalidDescriptionException(new InvalidPluginException(new FileNotFoundException("Plugin does not contain plugin.yml")));
             }
 
-            return new PluginDescriptionFile(stream);
+            return descriptions.put(file, stream.readAllBytes());
         } catch (IOException e) {
             e.printStackTrace();
         } finally {
@@ -470,11 +785,61 @@ public class PythonPluginLoader implements PluginLoader {
                     stream.close();
                 } catch (IOException e) {}
             }
+            try {
+                data.close();
+            } catch (IOException e) {}
         }
         return null;
     }
 
-    private PluginManagerWrapper getPlugInManager() {
+    /**
+     * @return code cache of PPLoader, or a non persistent one if PPLoader is not available
+     */
+    private PythonCodeCache getCodeCache() {
+        PythonLoader ppLoader = getPPLoader();
+        if (ppLoader != null) {
+            return ppLoader.getCodeCache();
+        }
+        return new PythonCodeCache(null, server.getLogger());
+    }
+
+    /**
+     * @return plugin.yml index of PPLoader, or a non persistent one if PPLoader is not available
+     */
+    private synchronized PythonDescriptionCache getDescriptionCache() {
+        PythonLoader ppLoader = getPPLoader();
+        if (ppLoader != null) {
+            return ppLoader.getDescriptionCache();
+        }
+        if (descriptionCache == null) {
+            descriptionCache = new PythonDescriptionCache(null, server.getLogger());
+        }
+        return descriptionCache;
+    }
+
+    /**
+     * @return async handler dispatcher of PPLoader, or a default one if PPLoader is not available
+     */
+    private synchronized PythonAsyncDispatcher getAsyncDispatcher() {
+        PythonLoader ppLoader = getPPLoader();
+        if (ppLoader != null) {
+            return ppLoader.getAsyncDispatcher();
+        }
+        if (asyncDispatcher == null) {
+            asyncDispatcher = new PythonAsyncDispatcher(1024, PythonAsyncDispatcher.Overflow.DROP);
+        }
+        return asyncDispatcher;
+    }
+
+    /**
+     * @return the PPLoader plugin, null if it is not available
+     */
+    private PythonLoader getPPLoader() {
+        Plugin ppLoader = getPlugInManager().getPlugin("PPLoader");
+        return ppLoader instanceof PythonLoader ? (PythonLoader) ppLoader : null;
+    }
+
+    private synchronized PluginManagerWrapper getPlugInManager() {
         if (pmw == null) {
             try {
                 Class.forName("io.papermc.paper.plugin.manager.PaperPluginManagerImpl");
@@ -0,0 +1,114 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.pyloader;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Event handler statistics of a python plugin, registered as MXBean while the plugin is enabled.
+ */
+public class PythonPluginStats implements PythonPluginStatsMXBean {
+
+    private final PythonPlugin plugin;
+
+    /**
+     * @param plugin plugin to report on
+     */
+    public PythonPluginStats(PythonPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public String getPluginName() {
+        return plugin.getDescription().getName();
+    }
+
+    @Override
+    public long getLoadNanos() {
+        return plugin.loadNanos;
+    }
+
+    @Override
+    public List<PythonHandlerStats> getHandlers() {
+        List<PythonHandlerStats> result = new ArrayList<PythonHandlerStats>();
+        for (PythonEventHandler handler : plugin.active().eventHandlers) {
+            result.add(handler.stats);
+        }
+        return result;
+    }
+
+    @Override
+    public long getTotalInvocations() {
+        long total = 0;
+        for (PythonEventHandler handler : plugin.active().eventHandlers) {
+            total += handler.stats.getInvocations();
+        }
+        return total;
+    }
+
+    @Override
+    public long getTotalNanos() {
+        long total = 0;
+        for (PythonEventHandler handler : plugin.active().eventHandlers) {
+            total += handler.stats.getTotalNanos();
+        }
+        return total;
+    }
+
+    /**
+     * Register the statistics of a plugin with the platform MBean server.
+     * @param plugin plugin to register
+     */
+    static void register(PythonPlugin plugin) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = objectName(plugin);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new PythonPluginStats(plugin), name);
+            }
+        } catch (JMException e) {
+            plugin.getServer().getLogger().log(Level.WARNING, "[PPLoader] Could not register statistics of " + plugin, e);
+        }
+    }
+
+    /**
+     * @param plugin plugin to unregister
+     */
+    static void unregister(PythonPlugin plugin) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = objectName(plugin);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            plugin.getServer().getLogger().log(Level.WARNING, "[PPLoader] Could not unregister statistics of " + plugin, e);
+        }
+    }
+
+    private static ObjectName objectName(PythonPlugin plugin) throws JMException {
+        return new ObjectName("org.cyberlis.pyloader:type=PythonPlugin,name="
+                + ObjectName.quote(plugin.getDescription().getName()));
+    }
+}
@@ -0,0 +1,50 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.pyloader;
+
+import java.util.List;
+
+/**
+ * JMX view of the event handler statistics of a python plugin.
+ */
+public interface PythonPluginStatsMXBean {
+
+    /**
+     * @return name of the plugin
+     */
+    String getPluginName();
+
+    /**
+     * @return time it took to load the plugin
+     */
+    long getLoadNanos();
+
+    /**
+     * @return statistics of every event handler the plugin registered
+     */
+    List<PythonHandlerStats> getHandlers();
+
+    /**
+     * @return calls of all event handlers of the plugin
+     */
+    long getTotalInvocations();
+
+    /**
+     * @return time spent in all event handlers of the plugin
+     */
+    long getTotalNanos();
+}
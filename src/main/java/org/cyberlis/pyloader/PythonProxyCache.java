@@ -0,0 +1,170 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.pyloader;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.python.core.Py;
+import org.python.core.PyJavaType;
+import org.python.core.PyObject;
+import org.python.core.PyProxy;
+import org.python.core.PySystemState;
+import org.python.core.adapter.PyObjectAdapter;
+
+/**
+ * Keeps the python wrapper of players, other entities and worlds, so the same java
+ * object is passed to python as the same wrapper instead of a new one every time
+ * it is returned by a getter or passed with an event. Keys are compared by identity
+ * and both keys and wrappers are held weakly, entries of players are dropped when
+ * they quit and entries of a world and its entities when it is unloaded.
+ * <p>
+ * The cache is added to jython's object adapter, which is shared by all
+ * interpreters and can not remove adapters again, so it is installed once and
+ * only switched off when PPLoader is disabled.
+ */
+public class PythonProxyCache implements PyObjectAdapter, Listener {
+
+    private static PythonProxyCache installed;
+
+    private final Map<Key, WeakReference<PyObject>> proxies = new ConcurrentHashMap<Key, WeakReference<PyObject>>();
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private volatile boolean enabled;
+
+    private PythonProxyCache() {
+    }
+
+    /**
+     * @return the cache, added to jython's object adapter on the first call
+     */
+    public static synchronized PythonProxyCache install() {
+        if (installed == null) {
+            // initializing jython replaces its object adapter, so it has to happen before
+            PySystemState.initialize(System.getProperties(), PySystemState.getBaseProperties(), null);
+            installed = new PythonProxyCache();
+            Py.getAdapter().addPreClass(installed);
+        }
+        installed.enabled = true;
+        return installed;
+    }
+
+    /**
+     * Stop caching and drop all wrappers.
+     */
+    public void uninstall() {
+        enabled = false;
+        proxies.clear();
+    }
+
+    @Override
+    public boolean canAdapt(Object o) {
+        return enabled && (o instanceof Entity || o instanceof World) && !(o instanceof PyProxy);
+    }
+
+    @Override
+    public PyObject adapt(Object o) {
+        expunge();
+        WeakReference<PyObject> cached = proxies.get(new Key(o, null));
+        PyObject proxy = cached != null ? cached.get() : null;
+        if (proxy != null) {
+            hits.increment();
+            return proxy;
+        }
+        misses.increment();
+        proxy = PyJavaType.wrapJavaObject(o);
+        proxies.put(new Key(o, collected), new WeakReference<PyObject>(proxy));
+        return proxy;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        proxies.remove(new Key(event.getPlayer(), null));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        World world = event.getWorld();
+        proxies.keySet().removeIf((key) -> {
+            Object o = key.get();
+            return o == world || o instanceof Entity && ((Entity) o).getWorld() == world;
+        });
+    }
+
+    /**
+     * @return number of cached wrappers, including ones which were collected but not removed yet
+     */
+    public int getSize() {
+        return proxies.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private void expunge() {
+        Reference<?> key;
+        while ((key = collected.poll()) != null) {
+            proxies.remove(key);
+        }
+    }
+
+    /**
+     * Weak reference to a java object which is equal to other keys of the same object.
+     */
+    private static final class Key extends WeakReference<Object> {
+        private final int hash;
+
+        Key(Object referent, ReferenceQueue<Object> queue) {
+            super(referent, queue);
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Object referent = get();
+            return referent != null && referent == ((Key) other).get();
+        }
+    }
+}
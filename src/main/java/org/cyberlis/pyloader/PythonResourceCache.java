@@ -0,0 +1,123 @@
+/*
+Copyright 2021 hypnos3@online.com
+This file is part of PPLoader.
+PPLoader is free software: you can redistribute it and/or modify
+it under the terms of the GNU General Public License as published by
+the Free Software Foundation, either version 3 of the License, or
+(at your option) any later version.
+
+PPLoader is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+GNU General Public License for more details.
+
+You should have received a copy of the GNU General Public License
+along with PPLoader.  If not, see <http://www.gnu.org/licenses/>
+*/
+package org.cyberlis.pyloader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.cyberlis.dataloaders.PluginDataFile;
+
+/**
+ * Size bounded cache of the resources of a python plugin, least recently used
+ * resources are evicted first. An entry is only used while the stamp of its file
+ * in the data file, e.g. the modification time, is unchanged.
+ */
+public class PythonResourceCache {
+
+    private final long maxBytes;
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /**
+     * @param maxBytes maximum size of all cached resources, resources larger than a quarter of it are not cached
+     */
+    public PythonResourceCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param data data file to read the resource from on a miss
+     * @param filename name of the resource
+     * @return content of the resource, shared with the cache and not to be modified, or null if it does not exist
+     * @throws IOException thrown if reading the resource fails
+     */
+    public byte[] get(PluginDataFile data, String filename) throws IOException {
+        long stamp = data.getStamp(filename);
+        synchronized (this) {
+            Entry entry = entries.get(filename);
+            if (entry != null && entry.stamp == stamp) {
+                hits++;
+                return entry.content;
+            }
+            misses++;
+        }
+
+        byte[] content;
+        try (InputStream stream = data.getStream(filename)) {
+            if (stream == null) {
+                return null;
+            }
+            content = stream.readAllBytes();
+        }
+        if (content.length <= maxBytes / 4) {
+            put(filename, new Entry(content, stamp));
+        }
+        return content;
+    }
+
+    private synchronized void put(String filename, Entry entry) {
+        Entry previous = entries.put(filename, entry);
+        if (previous != null) {
+            bytes -= previous.content.length;
+        }
+        bytes += entry.content.length;
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().content.length;
+            it.remove();
+        }
+    }
+
+    /**
+     * Drop all cached resources.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return size of the cached resources
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private static final class Entry {
+        private final byte[] content;
+        private final long stamp;
+
+        Entry(byte[] content, long stamp) {
+            this.content = content;
+            this.stamp = stamp;
+        }
+    }
+}